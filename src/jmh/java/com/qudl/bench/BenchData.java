@@ -0,0 +1,48 @@
+package com.qudl.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+// 基准测试用的随机数据和临时目录
+final class BenchData {
+    private BenchData() {
+    }
+
+    static byte[] random(int size, long seed) {
+        byte[] data = new byte[size];
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < size; i += 8) {
+            long value = random.nextLong();
+            for (int j = 0; j < 8 && i + j < size; j++) {
+                data[i + j] = (byte) (value >>> (j * 8));
+            }
+        }
+        return data;
+    }
+
+    static int parseSize(String size) {
+        String value = size.trim().toUpperCase();
+        if (value.endsWith("KB")) {
+            return Integer.parseInt(value.substring(0, value.length() - 2)) * 1024;
+        }
+        if (value.endsWith("MB")) {
+            return Integer.parseInt(value.substring(0, value.length() - 2)) * 1024 * 1024;
+        }
+        return Integer.parseInt(value);
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null || Files.notExists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.qudl.bench;
+
+import com.qudl.manager.LocalChecker;
+import com.qudl.manager.ManifestEntry;
+import com.qudl.util.HashIndex;
+import com.qudl.util.Metrics;
+import com.qudl.util.XXHash64;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 本地比对：模拟 500 个 jar 的 mods 目录，cold 为空索引（全部计算哈希），warm 为索引全部命中
+// cold 只清空哈希索引，操作系统页缓存仍是热的
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompareBenchmark {
+    @Param({"500"})
+    public int jars;
+
+    @Param({"cold", "warm"})
+    public String cache;
+
+    // 需要更新的文件比例（%），这些条目的哈希与本地不同但大小相同
+    @Param({"10"})
+    public int outdatedPercent;
+
+    // manifest 声明的快速摘要算法，none 表示只有 SHA-256
+    @Param({"none", "xxh64"})
+    public String fastHash;
+
+    private Path dir;
+    private Path indexPath;
+    private List<ManifestEntry> entries;
+    private HashIndex warmIndex;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException {
+        dir = Files.createTempDirectory("qudl-compare-bench");
+        indexPath = dir.resolve("index.json");
+        Path mods = Files.createDirectories(dir.resolve("mods"));
+
+        SplittableRandom random = new SplittableRandom(42);
+        entries = new ArrayList<>(jars);
+        for (int i = 0; i < jars; i++) {
+            // 大小分布接近常见整合包：多数几十到几百 KB，少数数 MB
+            int size = (int) Math.min(8L * 1024 * 1024, Math.round(Math.exp(random.nextDouble(9.5, 15.5))));
+            byte[] data = BenchData.random(size, i);
+            String name = "mod-" + i + ".jar";
+            Files.write(mods.resolve(name), data);
+            byte[] expected = random.nextInt(100) < outdatedPercent ? name.getBytes(StandardCharsets.UTF_8) : data;
+            String fast = null;
+            if (!"none".equals(fastHash)) {
+                XXHash64 digest = new XXHash64();
+                digest.update(expected, 0, expected.length);
+                fast = digest.digestHex();
+            }
+            entries.add(new ManifestEntry(name, DigestUtils.sha256Hex(expected), size, null, false,
+                    fast == null ? null : fastHash, fast));
+        }
+
+        warmIndex = HashIndex.load(indexPath);
+        run(warmIndex);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchData.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public int compare() throws InterruptedException {
+        HashIndex index = "warm".equals(cache) ? warmIndex : HashIndex.load(dir.resolve("missing.json"));
+        return run(index);
+    }
+
+    private int run(HashIndex index) throws InterruptedException {
+        AtomicInteger outdated = new AtomicInteger();
+        LocalChecker checker = new LocalChecker(dir.resolve("mods"), index, new Metrics(), entry -> outdated.incrementAndGet());
+        for (ManifestEntry entry : entries) {
+            checker.check(entry);
+        }
+        checker.await();
+        return outdated.get();
+    }
+}
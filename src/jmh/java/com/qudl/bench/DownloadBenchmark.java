@@ -0,0 +1,147 @@
+package com.qudl.bench;
+
+import com.qudl.config.QUDLConfig;
+import com.qudl.network.MirrorSet;
+import com.qudl.network.QUDLDownloader;
+import com.qudl.network.QUDLHttp;
+import com.qudl.testing.StandInServer;
+import com.qudl.util.FastCDC;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// 端到端下载：本地替身服务器 → QUDLDownloader → 校验并写入目标目录
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DownloadBenchmark {
+    // 文件数 x 单个文件大小
+    @Param({"1x64MB", "50x256KB", "300x32KB"})
+    public String layout;
+
+    @Param({"4"})
+    public int maxSegments;
+
+    // 是否通过打包接口一次获取所有文件
+    @Param({"false", "true"})
+    public boolean bundle;
+
+    private StandInServer server;
+    private HttpClient client;
+    private QUDLDownloader downloader;
+    private MirrorSet mirrors;
+    private Path dir;
+    private final Map<String, String> hashes = new LinkedHashMap<>();
+    private int fileSize;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        String[] parts = layout.split("x");
+        int count = Integer.parseInt(parts[0]);
+        fileSize = BenchData.parseSize(parts[1]);
+
+        server = new StandInServer();
+        for (int i = 0; i < count; i++) {
+            String name = "file-" + i + ".jar";
+            hashes.put(name, server.put(name, BenchData.random(fileSize, i)));
+        }
+
+        QUDLConfig.DownloadConfig config = new QUDLConfig.DownloadConfig();
+        config.max_segments = maxSegments;
+        config.segment_threshold_mb = 16;
+        client = QUDLHttp.newClient(config);
+        downloader = new QUDLDownloader(client, config);
+        mirrors = new MirrorSet(List.of(server.baseUrl()), config);
+        dir = Files.createTempDirectory("qudl-download-bench");
+    }
+
+    @Setup(Level.Invocation)
+    public void clean() throws IOException {
+        BenchData.deleteRecursively(dir);
+        Files.createDirectories(dir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        downloader.shutdown();
+        server.close();
+        BenchData.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void download() throws Exception {
+        CountDownLatch done = new CountDownLatch(hashes.size());
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        List<QUDLDownloader.BundleItem> items = new ArrayList<>();
+        for (Map.Entry<String, String> file : hashes.entrySet()) {
+            QUDLDownloader.ProgressListener listener = listener(file.getValue(), done, failure);
+            if (bundle) {
+                items.add(new QUDLDownloader.BundleItem(file.getKey(), file.getKey(), false, listener));
+            } else {
+                downloader.downloadFile(server.url(file.getKey()), file.getKey(), dir, listener);
+            }
+        }
+        if (bundle) {
+            downloader.downloadBundle(mirrors, "v/bundle", items, dir);
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private QUDLDownloader.ProgressListener listener(String hash, CountDownLatch done, AtomicReference<Exception> failure) {
+        return new QUDLDownloader.ProgressListener() {
+            @Override
+            public void onStartDownload(String filename) {}
+
+            @Override
+            public void onProgress(String filename, long current, long total) {}
+
+            @Override
+            public void onComplete(String filename) {
+                done.countDown();
+            }
+
+            @Override
+            public void onError(String filename, Exception e) {
+                failure.compareAndSet(null, e);
+                done.countDown();
+            }
+
+            @Override
+            public String getExpectedHash(String filename) {
+                return hash;
+            }
+
+            @Override
+            public long getExpectedSize(String filename) {
+                return fileSize;
+            }
+
+            @Override
+            public FastCDC.Layout getChunkLayout(String filename) {
+                return null;
+            }
+        };
+    }
+}
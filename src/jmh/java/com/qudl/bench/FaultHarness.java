@@ -0,0 +1,190 @@
+package com.qudl.bench;
+
+import com.qudl.config.QUDLConfig;
+import com.qudl.manager.QUDLUpdateManager;
+import com.qudl.manager.UpdateListener;
+import com.qudl.network.QUDLHttp;
+import com.qudl.testing.FaultyServer;
+import com.qudl.util.HashUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// 故障注入压测：多个模拟客户端同时对 FaultyServer 执行完整的更新会话（manifest → 校验 → 下载）
+// ./gradlew faultHarness -Pargs="--clients 200 --files 30 --size 256KB --faults disconnect=0.05,error=0.05"
+// 报告会话耗时百分位、因重试多发送的字节，并检查是否有损坏的文件被安装
+public final class FaultHarness {
+    private static final String VERSION = "1.20.1";
+
+    private FaultHarness() {
+    }
+
+    private record Outcome(long millis, QUDLUpdateManager.Result result) {}
+
+    public static void main(String[] args) throws Exception {
+        int clients = 1;
+        int files = 20;
+        int size = 256 * 1024;
+        String spec = "none";
+        boolean bundle = false;
+        long timeoutSeconds = 600;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--clients" -> clients = Integer.parseInt(args[++i]);
+                case "--files" -> files = Integer.parseInt(args[++i]);
+                case "--size" -> size = BenchData.parseSize(args[++i]);
+                case "--faults" -> spec = args[++i];
+                case "--bundle" -> bundle = true;
+                case "--timeout" -> timeoutSeconds = Long.parseLong(args[++i]);
+                default -> throw new IllegalArgumentException("未知参数: " + args[i]);
+            }
+        }
+
+        Path root = Files.createTempDirectory("qudl-fault-harness");
+        ExecutorService sessions = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "Harness-Session");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FaultyServer server = new FaultyServer(FaultyServer.Faults.parse(spec), "mods/")) {
+            Map<String, String> hashes = new LinkedHashMap<>();
+            StringBuilder manifest = new StringBuilder("{\"files\":[");
+            for (int i = 0; i < files; i++) {
+                String name = "mod-" + i + ".jar";
+                String hash = server.put("mods/" + VERSION + "/" + name, BenchData.random(size, i));
+                hashes.put(name, hash);
+                manifest.append(i == 0 ? "" : ",")
+                        .append("{\"filename\":\"").append(name)
+                        .append("\",\"hash\":\"").append(hash)
+                        .append("\",\"size\":").append(size).append('}');
+            }
+            byte[] manifestBytes = manifest.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+            server.put("api/" + VERSION, manifestBytes);
+
+            System.out.printf("客户端 %d  文件 %d x %d KB  故障 %s%n", clients, files, size / 1024, spec);
+            List<CompletableFuture<Outcome>> outcomes = new ArrayList<>();
+            List<Path> gameDirs = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                Path gameDir = root.resolve("client-" + i);
+                Files.createDirectories(gameDir.resolve("mods"));
+                gameDirs.add(gameDir);
+                outcomes.add(startClient(server, gameDir, bundle, sessions));
+            }
+
+            Outcome[] results = new Outcome[clients];
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+            int timedOut = 0;
+            for (int i = 0; i < clients; i++) {
+                try {
+                    results[i] = outcomes.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    timedOut++;
+                }
+            }
+
+            report(results, timedOut, gameDirs, hashes, server,
+                    (long) clients * ((long) files * size + manifestBytes.length));
+        } finally {
+            sessions.shutdownNow();
+            BenchData.deleteRecursively(root);
+        }
+    }
+
+    // 每个客户端使用独立的游戏目录、连接和下载线程，与真实玩家相同
+    private static CompletableFuture<Outcome> startClient(FaultyServer server, Path gameDir, boolean bundle,
+                                                          ExecutorService sessions) {
+        QUDLConfig config = new QUDLConfig();
+        config.providers.api.base_url = server.url("api/");
+        config.providers.api.current_version = VERSION;
+        config.providers.mods.base_url = server.url("mods");
+        config.store.enabled = false;
+        if (!bundle) {
+            config.download.bundle_threshold_kb = 0;
+        }
+
+        CompletableFuture<Outcome> outcome = new CompletableFuture<>();
+        long start = System.nanoTime();
+        QUDLUpdateManager session = new QUDLUpdateManager(config, gameDir, false, QUDLHttp.newClient(config.download));
+        session.attach(new UpdateListener() {
+            @Override
+            public void onStatus(String message) {
+            }
+
+            @Override
+            public void onError(String message) {
+            }
+
+            @Override
+            public void onFinished(QUDLUpdateManager.Result result) {
+                outcome.complete(new Outcome((System.nanoTime() - start) / 1_000_000, result));
+            }
+        });
+        session.start(sessions);
+        return outcome;
+    }
+
+    private static void report(Outcome[] results, int timedOut, List<Path> gameDirs, Map<String, String> hashes,
+                               FaultyServer server, long idealBytes) throws IOException {
+        int succeeded = 0;
+        int failedFiles = 0;
+        long[] millis = new long[results.length];
+        int count = 0;
+        for (Outcome outcome : results) {
+            if (outcome == null) {
+                continue;
+            }
+            millis[count++] = outcome.millis();
+            failedFiles += outcome.result().failed();
+            if (outcome.result().failed() == 0 && !outcome.result().cancelled()) {
+                succeeded++;
+            }
+        }
+        long[] sorted = Arrays.copyOf(millis, count);
+        Arrays.sort(sorted);
+
+        // 会话报告失败的文件不会留在 mods 中；这里检查已安装的文件是否都与 manifest 一致
+        int missing = 0;
+        int corrupted = 0;
+        for (Path gameDir : gameDirs) {
+            for (Map.Entry<String, String> entry : hashes.entrySet()) {
+                Path file = gameDir.resolve("mods").resolve(entry.getKey());
+                if (Files.notExists(file)) {
+                    missing++;
+                } else if (!HashUtils.calculateSHA256(file).equalsIgnoreCase(entry.getValue())) {
+                    corrupted++;
+                }
+            }
+        }
+
+        long sent = server.bytesSent();
+        System.out.printf("成功会话 %d/%d  超时 %d  失败文件 %d%n", succeeded, results.length, timedOut, failedFiles);
+        System.out.printf("耗时 p50 %d ms  p90 %d ms  p99 %d ms  max %d ms%n",
+                percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+                sorted.length == 0 ? -1 : sorted[sorted.length - 1]);
+        System.out.printf("发送 %.1f MB  理想 %.1f MB  重试浪费 %.1f MB (%.1f%%)%n",
+                sent / 1048576.0, idealBytes / 1048576.0, Math.max(0, sent - idealBytes) / 1048576.0,
+                idealBytes == 0 ? 0 : Math.max(0, sent - idealBytes) * 100.0 / idealBytes);
+        System.out.printf("缺失文件 %d  损坏文件 %d%n", missing, corrupted);
+        System.out.println("注入故障 " + server.injected());
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return -1;
+        }
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
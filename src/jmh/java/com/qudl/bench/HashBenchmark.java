@@ -0,0 +1,61 @@
+package com.qudl.bench;
+
+import com.qudl.util.HashUtils;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// 摘要吞吐：HashUtils（映射 / 直接缓冲区）的 SHA-256、xxHash64 与普通流式读取对比
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HashBenchmark {
+    @Param({"64KB", "1MB", "16MB", "128MB"})
+    public String size;
+
+    private Path dir;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("qudl-hash-bench");
+        file = dir.resolve("data.bin");
+        Files.write(file, BenchData.random(BenchData.parseSize(size), 1));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchData.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public String hashUtils() throws IOException {
+        return HashUtils.calculateSHA256(file);
+    }
+
+    @Benchmark
+    public String xxh64() throws IOException {
+        return HashUtils.calculateXXH64(file);
+    }
+
+    @Benchmark
+    public String streamBaseline() throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return DigestUtils.sha256Hex(in);
+        }
+    }
+}
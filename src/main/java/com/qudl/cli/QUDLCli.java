@@ -0,0 +1,212 @@
+package com.qudl.cli;
+
+import com.qudl.config.QUDLConfig;
+import com.qudl.manager.Generations;
+import com.qudl.manager.QUDLUpdateManager;
+import com.qudl.manager.QUDLUpdateService;
+import com.qudl.manager.StagedUpdate;
+import com.qudl.manager.UpdateListener;
+import com.qudl.manager.UpdateProgress;
+import com.qudl.util.BlobStore;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// 命令行更新：启动器在游戏 JVM 启动前同步 mods 目录，无需先进入游戏再重启
+// 用法：java -cp qudl.jar:gson.jar:slf4j-api.jar:commons-codec.jar com.qudl.cli.QUDLCli [--game-dir 目录] [--config 文件]
+public final class QUDLCli {
+    private static final long PROGRESS_INTERVAL_MS = 1000;
+    // Ctrl+C 后等待会话保存断点的最长时间
+    private static final long CANCEL_WAIT_MS = 5000;
+
+    private QUDLCli() {
+    }
+
+    public static void main(String[] args) {
+        Path gameDir = Path.of(".");
+        Path configPath = null;
+        String command = null;
+        String generation = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--game-dir" -> gameDir = Path.of(value(args, ++i));
+                case "--config" -> configPath = Path.of(value(args, ++i));
+                case "--list" -> command = "list";
+                case "--rollback" -> command = "rollback";
+                case "--switch" -> {
+                    command = "switch";
+                    generation = value(args, ++i);
+                }
+                case "--help", "-h" -> {
+                    usage();
+                    return;
+                }
+                default -> {
+                    System.err.println("未知参数: " + args[i]);
+                    usage();
+                    System.exit(2);
+                }
+            }
+        }
+
+        gameDir = gameDir.toAbsolutePath().normalize();
+        if (!Files.isDirectory(gameDir)) {
+            System.err.println("游戏目录不存在: " + gameDir);
+            System.exit(2);
+        }
+        QUDLConfig config = QUDLConfig.load(configPath != null ? configPath : gameDir.resolve("config/qudl_config.json"));
+        if (command == null) {
+            System.exit(run(config, gameDir) ? 0 : 1);
+        }
+        System.exit(switch (command) {
+            case "list" -> list(gameDir);
+            case "rollback" -> switchTo(config, gameDir, null);
+            default -> switchTo(config, gameDir, generation);
+        } ? 0 : 1);
+    }
+
+    private static boolean list(Path gameDir) {
+        Generations generations = Generations.load(gameDir);
+        Generations.Generation active = generations.active();
+        if (generations.list().isEmpty()) {
+            System.out.println("没有已记录的版本");
+        }
+        for (Generations.Generation generation : generations.list()) {
+            System.out.printf("%s %s  %s  %d 个文件  %.1f MB%n", generation == active ? "*" : " ", generation.id,
+                    generation.game_version, generation.files.size(), generation.size() / 1048576.0);
+        }
+        return true;
+    }
+
+    // 切换到指定版本，id 为 null 时回滚到上一个版本；只使用本地存储，不联网
+    private static boolean switchTo(QUDLConfig config, Path gameDir, String id) {
+        Generations generations = Generations.load(gameDir);
+        Generations.Generation target = id == null ? generations.previous() : generations.find(id);
+        if (target == null) {
+            System.err.println(id == null ? "没有可回滚的版本" : "未找到版本: " + id);
+            return false;
+        }
+        BlobStore store = BlobStore.open(config.store);
+        if (store == null) {
+            System.err.println("本地存储未启用，无法切换版本");
+            return false;
+        }
+        try {
+            if (!generations.activate(target, gameDir.resolve("mods"), store)) {
+                System.err.println("切换失败，mods 目录未修改");
+                return false;
+            }
+            generations.save();
+            System.out.println("已切换到 " + target.id);
+            return true;
+        } finally {
+            store.close();
+        }
+    }
+
+    // 返回 true 表示 mods 目录已与服务器一致
+    public static boolean run(QUDLConfig config, Path gameDir) {
+        StagedUpdate staged = StagedUpdate.load(gameDir);
+        if (staged.isReady()) {
+            System.out.println("已应用 " + staged.apply(gameDir.resolve("mods")) + " 个暂存更新");
+        }
+
+        // 游戏未运行，总是直接更新 mods 目录
+        QUDLUpdateManager session = QUDLUpdateService.get().check(config, gameDir, false);
+        CompletableFuture<QUDLUpdateManager.Result> finished = new CompletableFuture<>();
+        session.attach(new UpdateListener() {
+            @Override
+            public void onStatus(String message) {
+                System.out.println(message);
+            }
+
+            @Override
+            public void onError(String message) {
+                System.err.println("错误: " + message);
+            }
+
+            @Override
+            public void onFinished(QUDLUpdateManager.Result result) {
+                finished.complete(result);
+            }
+        });
+
+        Thread shutdownHook = new Thread(() -> {
+            QUDLUpdateService.get().cancel();
+            try {
+                finished.get(CANCEL_WAIT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException | ExecutionException | TimeoutException ignored) {
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        QUDLUpdateManager.Result result;
+        try {
+            result = awaitWithProgress(finished, session.progress());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ignored) {
+            // 已在退出过程中
+        }
+
+        if (result.cancelled()) {
+            System.out.println("更新已取消，已下载的部分将在下次运行时继续");
+        } else if (result.failed() > 0) {
+            System.out.println("更新未完成，" + result.failed() + " 个任务失败");
+        } else if (result.updated() == 0) {
+            System.out.println("没有需要更新的内容");
+        } else {
+            System.out.println("已更新 " + result.updated() + " 个文件");
+        }
+        return !result.cancelled() && result.failed() == 0;
+    }
+
+    private static QUDLUpdateManager.Result awaitWithProgress(CompletableFuture<QUDLUpdateManager.Result> finished,
+                                                              UpdateProgress progress) throws InterruptedException {
+        String last = null;
+        while (true) {
+            try {
+                return finished.get(PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (progress.totalFiles() == 0) {
+                    continue;
+                }
+                String line = String.format("已完成 %d/%d 个文件  %.1f/%.1f MB",
+                        progress.completedFiles(), progress.totalFiles(),
+                        progress.doneBytes() / 1048576.0, progress.totalBytes() / 1048576.0);
+                if (!line.equals(last)) {
+                    System.out.println(line);
+                    last = line;
+                }
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            System.err.println("参数缺少值: " + args[index - 1]);
+            usage();
+            System.exit(2);
+        }
+        return args[index];
+    }
+
+    private static void usage() {
+        System.out.println("用法: QUDLCli [--game-dir 目录] [--config 配置文件] [--list | --rollback | --switch 版本]");
+        System.out.println("  --game-dir  游戏根目录（包含 mods 和 config），默认为当前目录");
+        System.out.println("  --config    配置文件，默认为 <游戏目录>/config/qudl_config.json");
+        System.out.println("  --list      列出已记录的版本，* 为当前版本");
+        System.out.println("  --rollback  不联网回滚到上一个版本");
+        System.out.println("  --switch    不联网切换到指定版本");
+    }
+}
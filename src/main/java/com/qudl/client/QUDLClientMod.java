@@ -1,19 +1,23 @@
 package com.qudl.client;
 
 import com.qudl.config.QUDLConfig;
+import com.qudl.gui.ProgressScreenView;
+import com.qudl.manager.QUDLUpdateManager;
+import com.qudl.manager.QUDLUpdateService;
+import com.qudl.util.QUDLLog;
 import net.fabricmc.api.ClientModInitializer;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents;
 import net.fabricmc.fabric.api.client.screen.v1.ScreenEvents;
 import net.fabricmc.fabric.api.client.screen.v1.Screens;
+import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.gui.screen.TitleScreen;
 import net.minecraft.client.gui.widget.ButtonWidget;
 import net.minecraft.text.Text;
 import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 public class QUDLClientMod implements ClientModInitializer {
-    public static final Logger LOGGER = LoggerFactory.getLogger("QUDL");
+    public static final Logger LOGGER = QUDLLog.LOGGER;
     public static QUDLConfig config;
     private static boolean firstLaunch = true;
 
@@ -23,7 +27,10 @@ public class QUDLClientMod implements ClientModInitializer {
         ClientLifecycleEvents.CLIENT_STARTED.register(client -> {
             LOGGER.info("[QUDL] 开始延迟初始化");
 
-            config = QUDLConfig.load();
+            // preLaunch 中已读取
+            if (config == null) {
+                config = QUDLConfig.load();
+            }
 
             // 注册屏幕初始化事件（确保最后执行）
             ScreenEvents.AFTER_INIT.register((mc, screen, width, height) -> {
@@ -32,20 +39,28 @@ public class QUDLClientMod implements ClientModInitializer {
                 }
             });
 
-            // 首次启动自动检查
+            // 首次启动自动检查：通常已在 preLaunch 中开始，这里接入界面
+            // 后台模式下载到暂存目录，不阻塞主菜单，下次启动时应用
             if (firstLaunch) {
-                MinecraftClient.getInstance().execute(() -> MinecraftClient.getInstance().setScreen(new com.qudl.gui.QUDLProgressScreen()));
-                new com.qudl.manager.QUDLUpdateManager().checkForUpdates();
+                QUDLUpdateService service = QUDLUpdateService.get();
+                QUDLUpdateManager session = service.current();
+                if (session == null) {
+                    session = check(QUDLUpdateManager.isStagedMode(config));
+                }
+                ProgressScreenView.attach(session, !session.isBackground());
                 firstLaunch = false;
             }
         });
     }
 
+    static QUDLUpdateManager check(boolean background) {
+        return QUDLUpdateService.get().check(config, FabricLoader.getInstance().getGameDir(), background);
+    }
+
     private void addUpdateButton(TitleScreen titleScreen, MinecraftClient client) {
-        ButtonWidget button = ButtonWidget.builder(Text.of("检查更新"), btn -> {
-                    client.execute(() -> client.setScreen(new com.qudl.gui.QUDLProgressScreen()));
-                    new com.qudl.manager.QUDLUpdateManager().checkForUpdates();
-                })
+        // 检查正在进行时重新打开其进度界面，不会开始第二个会话
+        ButtonWidget button = ButtonWidget.builder(Text.of("检查更新"), btn ->
+                        ProgressScreenView.attach(check(false), true))
                 .position(titleScreen.width / 2 + 104, titleScreen.height / 4 + 72)
                 .size(50, 20)
                 .build();
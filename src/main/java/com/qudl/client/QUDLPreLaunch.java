@@ -0,0 +1,30 @@
+package com.qudl.client;
+
+import com.qudl.config.QUDLConfig;
+import com.qudl.manager.QUDLUpdateManager;
+import com.qudl.manager.QUDLUpdateService;
+import com.qudl.manager.StagedUpdate;
+import net.fabricmc.loader.api.FabricLoader;
+import net.fabricmc.loader.api.entrypoint.PreLaunchEntrypoint;
+import org.slf4j.Logger;
+
+import java.nio.file.Path;
+
+// 游戏启动早期应用上次后台下载完成的更新，并在后台线程开始本次检查，与游戏加载并行
+// 此时游戏类尚未加载，这里及会话内部都不能引用 Minecraft 的类
+public class QUDLPreLaunch implements PreLaunchEntrypoint {
+    private static final Logger LOGGER = QUDLClientMod.LOGGER;
+
+    @Override
+    public void onPreLaunch() {
+        Path gameDir = FabricLoader.getInstance().getGameDir();
+        StagedUpdate staged = StagedUpdate.load(gameDir);
+        if (staged.isReady()) {
+            int applied = staged.apply(gameDir.resolve("mods"));
+            LOGGER.info("[QUDL] 已应用 {} 个暂存更新", applied);
+        }
+
+        QUDLClientMod.config = QUDLConfig.load();
+        QUDLUpdateService.get().check(QUDLClientMod.config, gameDir, QUDLUpdateManager.isStagedMode(QUDLClientMod.config));
+    }
+}
@@ -6,10 +6,14 @@ import com.google.gson.GsonBuilder;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 public class QUDLConfig {
     public ProviderConfig providers = new ProviderConfig();
     public DownloadConfig download = new DownloadConfig();
+    public StoreConfig store = new StoreConfig();
+    public GenerationConfig generations = new GenerationConfig();
 
     public static class ProviderConfig {
         public ApiConfig api = new ApiConfig();
@@ -19,24 +23,79 @@ public class QUDLConfig {
     public static class ApiConfig {
         public String base_url = "http://home.xuebi.cloud:9009/api/";
         public String current_version = "1.20.1";
+        // 备用服务器，内容与 base_url 相同
+        public List<String> mirrors = new ArrayList<>();
     }
 
     public static class ModsConfig {
         public String base_url = "http://home.xuebi.cloud:9009/mods";
+        public List<String> mirrors = new ArrayList<>();
     }
 
     public static class DownloadConfig {
+        // 同时下载的文件数；adaptive_threads 为 true 时作为初始值，运行中按吞吐和延迟在 min_threads 与 max_threads 之间调整
         public int threads = 4;
+        public boolean adaptive_threads = true;
+        public int min_threads = 2;
+        public int max_threads = 8;
         public int retries = 3;
+        public int connect_timeout_ms = 10000;
+        public int read_timeout_ms = 30000;
+        public int manifest_timeout_ms = 15000;
+        // 本地有缓存的manifest时，等待服务器的最长时间
+        public int manifest_offline_timeout_ms = 3000;
+        // 超过该大小（MB）的文件分段并行下载
+        public int segment_threshold_mb = 32;
+        public int max_segments = 4;
+        // manifest 提供分块信息时只下载变化的部分
+        public boolean delta_sync = true;
+        // 小于该大小（KB）的文件合并为一次打包请求，0 表示关闭
+        public int bundle_threshold_kb = 256;
+        public int bundle_max_files = 200;
+        // 排队任务的顺序：largest_first、shortest_first 或 manifest，标记为 required 的文件总是优先
+        public String schedule = "largest_first";
+        public int max_connections_per_host = 8;
+        // 全局下载限速（KB/s），0 表示不限速
+        public int bandwidth_limit_kbps = 0;
+        // restart：启动时下载并重启游戏；staged：游戏中后台下载到暂存目录，下次启动时应用
+        public String apply_mode = "restart";
+        public int background_threads = 2;
+        // 后台下载限速（KB/s），0 表示沿用 bandwidth_limit_kbps
+        public int background_bandwidth_limit_kbps = 0;
+        // 配置了镜像时，首字节等待超过最近耗时的该百分位即向备用镜像发出对冲请求，0 表示关闭
+        public int hedge_percentile = 95;
+        public int hedge_min_ms = 500;
+        public int probe_timeout_ms = 2000;
+        // 连续失败（连接错误或 5xx）该次数后暂停使用该服务器，暂停时间按指数退避并加随机抖动；只有一个服务器时不熔断
+        public int circuit_failures = 3;
+        public int circuit_backoff_ms = 5000;
+        public int circuit_max_backoff_ms = 120000;
+    }
+
+    public static class StoreConfig {
+        public boolean enabled = true;
+        // 留空时使用 ~/.qudl/store，多个启动器实例共享
+        public String path = "";
+        public int max_size_mb = 4096;
+    }
+
+    public static class GenerationConfig {
+        // 保留已应用过的 mod 集合用于离线回滚，文件保存在 store 中，需要启用 store
+        public boolean enabled = true;
+        // 非活动版本独有文件的总大小上限（MB），超出时从最旧的版本开始移除
+        public int max_size_mb = 1024;
     }
 
     public static QUDLConfig load() {
-        Path path = Path.of("config/qudl_config.json");
+        return load(Path.of("config/qudl_config.json"));
+    }
+
+    public static QUDLConfig load(Path path) {
         Gson gson = new GsonBuilder().setPrettyPrinting().create();
 
         try {
             if (!Files.exists(path)) {
-                Files.createDirectories(path.getParent());
+                Files.createDirectories(path.toAbsolutePath().getParent());
                 Files.writeString(path, gson.toJson(new QUDLConfig()));
             }
             return gson.fromJson(Files.newBufferedReader(path), QUDLConfig.class);
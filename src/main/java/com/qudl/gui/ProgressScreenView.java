@@ -0,0 +1,106 @@
+package com.qudl.gui;
+
+import com.qudl.client.QUDLClientMod;
+import com.qudl.manager.QUDLUpdateManager;
+import com.qudl.manager.UpdateListener;
+import com.qudl.manager.UpdateProgress;
+import net.minecraft.client.MinecraftClient;
+import org.slf4j.Logger;
+
+// 将更新会话的状态转发到 QUDLProgressScreen，所有界面操作在渲染线程执行
+public class ProgressScreenView implements UpdateListener {
+    private static final Logger LOGGER = QUDLClientMod.LOGGER;
+
+    private final MinecraftClient client = MinecraftClient.getInstance();
+    private final QUDLUpdateManager session;
+
+    private ProgressScreenView(QUDLUpdateManager session) {
+        this.session = session;
+    }
+
+    // open 为 true 时显示进度界面；会话已结束且没有更新时不再打开
+    public static void attach(QUDLUpdateManager session, boolean open) {
+        ProgressScreenView view = new ProgressScreenView(session);
+        QUDLUpdateManager.Result result = session.result();
+        if (result != null && result.isEmpty()) {
+            LOGGER.info("[QUDL] 检查已完成，没有需要更新的内容");
+        } else if (open) {
+            view.open(session.progress());
+        }
+        session.attach(view);
+    }
+
+    private void open(UpdateProgress progress) {
+        client.execute(() -> {
+            if (!(client.currentScreen instanceof QUDLProgressScreen)) {
+                client.setScreen(new QUDLProgressScreen());
+            }
+            if (client.currentScreen instanceof QUDLProgressScreen screen) {
+                screen.attach(progress);
+            }
+        });
+    }
+
+    @Override
+    public void onStatus(String message) {
+        client.execute(() -> {
+            if (client.currentScreen instanceof QUDLProgressScreen screen) {
+                screen.setStatus(message);
+            }
+        });
+    }
+
+    @Override
+    public void onError(String message) {
+        client.execute(() -> {
+            if (client.currentScreen instanceof QUDLProgressScreen screen) {
+                screen.showError(message);
+            }
+        });
+    }
+
+    @Override
+    public void onFinished(QUDLUpdateManager.Result result) {
+        // 后台模式在下次启动时应用，失败时保留界面显示错误
+        if (result.background() || (result.failed() > 0 && !result.cancelled())) {
+            return;
+        }
+        if (result.cancelled() || result.updated() == 0) {
+            close();
+            return;
+        }
+
+        client.execute(() -> {
+            if (client.currentScreen instanceof QUDLProgressScreen screen) {
+                screen.startCountdown();
+            }
+        });
+        new Thread(() -> {
+            try {
+                logCountdown(3);
+                logCountdown(2);
+                logCountdown(1);
+                if (session.isCancelled()) {
+                    LOGGER.info("[QUDL] 已取消自动退出，更新将在下次启动时生效");
+                    return;
+                }
+                client.scheduleStop();
+            } catch (InterruptedException e) {
+                LOGGER.error("[QUDL] 关闭延迟被中断: {}", e.getMessage());
+            }
+        }).start();
+    }
+
+    private void close() {
+        client.execute(() -> {
+            if (client.currentScreen instanceof QUDLProgressScreen) {
+                client.setScreen(null);
+            }
+        });
+    }
+
+    private void logCountdown(int seconds) throws InterruptedException {
+        Thread.sleep(1000);
+        LOGGER.info("[QUDL] 倒计时{}秒...", seconds);
+    }
+}
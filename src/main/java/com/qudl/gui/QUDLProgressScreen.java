@@ -1,5 +1,7 @@
 package com.qudl.gui;
 
+import com.qudl.manager.QUDLUpdateService;
+import com.qudl.manager.UpdateProgress;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.gui.DrawContext;
 import net.minecraft.client.gui.screen.Screen;
@@ -11,14 +13,37 @@ import com.qudl.client.QUDLClientMod;
 public class QUDLProgressScreen extends Screen {
     private static final Logger LOGGER = QUDLClientMod.LOGGER;
     private static final MinecraftClient client = MinecraftClient.getInstance();
+    private static final long MB = 1024 * 1024;
+    // 速度和剩余时间每隔该时间重新计算一次
+    private static final long SPEED_INTERVAL_NANOS = 500_000_000L;
+    private static final int MAX_ROWS = 5;
+    private static final int BAR_WIDTH = 240;
+
     private String statusMessage = "正在从服务器获取更新...";
-    private String currentFile = "";
-    private int downloadedCount = 0;
-    private int totalFiles = 0;
+    private volatile UpdateProgress progress;
     private int countdown = -1;
     private long lastUpdateTime;
     private String errorMessage;
 
+    // 以下字段只在渲染线程使用，数值变化时才重新生成文本
+    private String summaryText = "";
+    private String speedText = "";
+    private int lastCompleted = -1;
+    private int lastFiles = -1;
+    private long lastDoneTenths = -1;
+    private long lastTotalTenths = -1;
+    private long lastSampleTime;
+    private long lastSampleBytes;
+    private double speed = -1;
+    private long lastSpeedTenths = -1;
+    private long lastEta = Long.MIN_VALUE;
+    private float overall;
+    private final UpdateProgress.FileProgress[] rowFiles = new UpdateProgress.FileProgress[MAX_ROWS];
+    private final String[] rowTexts = new String[MAX_ROWS];
+    private final int[] rowPercents = new int[MAX_ROWS];
+    private final float[] rowFractions = new float[MAX_ROWS];
+    private int rowCount;
+
     public QUDLProgressScreen() {
         super(Text.of("QUDL 更新管理器"));
         LOGGER.info("[QUDL] 初始化进度界面");
@@ -28,7 +53,11 @@ public class QUDLProgressScreen extends Screen {
     protected void init() {
         super.init();
         this.addDrawableChild(
-                ButtonWidget.builder(Text.of("取消"), button -> close())
+                // 中止下载并断开连接，已下载部分下次继续；Esc 只关闭界面，更新在后台继续
+                ButtonWidget.builder(Text.of("取消"), button -> {
+                            QUDLUpdateService.get().cancel();
+                            close();
+                        })
                         .position(this.width - 110, this.height - 30)
                         .size(100, 20)
                         .build()
@@ -52,16 +81,9 @@ public class QUDLProgressScreen extends Screen {
         );
 
         // 下载进度
-        if (errorMessage == null) {
-            String progressText = String.format("正在下载：%s (%d/%d)",
-                    currentFile, downloadedCount, totalFiles);
-            context.drawCenteredTextWithShadow(
-                    textRenderer,
-                    progressText,
-                    width / 2,
-                    50,
-                    0xAAAAAA
-            );
+        if (errorMessage == null && progress != null) {
+            sample(progress);
+            renderProgress(context);
         }
 
         // 错误信息
@@ -104,16 +126,89 @@ public class QUDLProgressScreen extends Screen {
         this.statusMessage = status;
     }
 
-    public void setCurrentFile(String filename) {
-        this.currentFile = filename;
+    public void attach(UpdateProgress progress) {
+        this.progress = progress;
+        this.lastSampleTime = System.nanoTime();
+        this.lastSampleBytes = progress.doneBytes();
     }
 
-    public void setTotalFiles(int total) {
-        this.totalFiles = total;
+    // 每帧读取一次进度计数
+    private void sample(UpdateProgress progress) {
+        long done = progress.doneBytes();
+        long total = progress.totalBytes();
+        int completed = progress.completedFiles();
+        int files = progress.totalFiles();
+        long doneTenths = done * 10 / MB;
+        long totalTenths = total * 10 / MB;
+        if (completed != lastCompleted || files != lastFiles
+                || doneTenths != lastDoneTenths || totalTenths != lastTotalTenths) {
+            summaryText = String.format("已完成 %d/%d 个文件  %.1f/%.1f MB",
+                    completed, files, doneTenths / 10.0, totalTenths / 10.0);
+            lastCompleted = completed;
+            lastFiles = files;
+            lastDoneTenths = doneTenths;
+            lastTotalTenths = totalTenths;
+        }
+        overall = total > 0 ? Math.min(1f, (float) done / total) : 0f;
+
+        long now = System.nanoTime();
+        if (now - lastSampleTime >= SPEED_INTERVAL_NANOS) {
+            double instant = (done - lastSampleBytes) * 1e9 / (now - lastSampleTime);
+            speed = speed < 0 ? instant : speed * 0.7 + instant * 0.3;
+            lastSampleTime = now;
+            lastSampleBytes = done;
+
+            long speedTenths = (long) (Math.max(0, speed) * 10 / MB);
+            long eta = speed > 1 && total > done ? (long) ((total - done) / speed) : -1;
+            if (speedTenths != lastSpeedTenths || eta != lastEta) {
+                speedText = eta >= 0
+                        ? String.format("%.1f MB/s  剩余约 %d:%02d", speedTenths / 10.0, eta / 60, eta % 60)
+                        : String.format("%.1f MB/s", speedTenths / 10.0);
+                lastSpeedTenths = speedTenths;
+                lastEta = eta;
+            }
+        }
+
+        int count = 0;
+        for (UpdateProgress.FileProgress file : progress.activeFiles()) {
+            if (count == MAX_ROWS) {
+                break;
+            }
+            long fileDone = file.done();
+            float fraction = file.size > 0 ? Math.min(1f, (float) fileDone / file.size) : 0f;
+            int percent = (int) (fraction * 100);
+            if (rowFiles[count] != file || rowPercents[count] != percent || rowTexts[count] == null) {
+                rowTexts[count] = file.filename + "  " + percent + "%";
+                rowFiles[count] = file;
+                rowPercents[count] = percent;
+            }
+            rowFractions[count] = fraction;
+            count++;
+        }
+        for (int i = count; i < rowCount; i++) {
+            rowFiles[i] = null;
+            rowTexts[i] = null;
+        }
+        rowCount = count;
+    }
+
+    private void renderProgress(DrawContext context) {
+        int left = width / 2 - BAR_WIDTH / 2;
+        context.drawCenteredTextWithShadow(textRenderer, summaryText, width / 2, 50, 0xAAAAAA);
+        context.drawCenteredTextWithShadow(textRenderer, speedText, width / 2, 62, 0xAAAAAA);
+        drawBar(context, left, 76, BAR_WIDTH, 4, overall, 0xFF55FF55);
+
+        int y = 90;
+        for (int i = 0; i < rowCount; i++) {
+            context.drawTextWithShadow(textRenderer, rowTexts[i], left, y, 0xCCCCCC);
+            drawBar(context, left, y + 10, BAR_WIDTH, 2, rowFractions[i], 0xFF5599FF);
+            y += 18;
+        }
     }
 
-    public void incrementDownloaded() {
-        this.downloadedCount++;
+    private static void drawBar(DrawContext context, int x, int y, int width, int height, float fraction, int color) {
+        context.fill(x, y, x + width, y + height, 0xFF333333);
+        context.fill(x, y, x + (int) (width * fraction), y + height, color);
     }
 
     public void startCountdown() {
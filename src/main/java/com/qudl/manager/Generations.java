@@ -0,0 +1,285 @@
+package com.qudl.manager;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.qudl.util.BlobStore;
+import com.qudl.util.FileUtils;
+import com.qudl.util.QUDLLog;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// 已应用过的 mod 集合（代）：每代记录文件名到哈希的映射，文件内容保留在 BlobStore 中
+// 切换代时按记录一次性链接文件并删除上一代独有的文件，回滚不需要联网
+public class Generations {
+    private static final Logger LOGGER = QUDLLog.LOGGER;
+    private static final Gson GSON = new Gson();
+    private static final String INDEX = "config/qudl_generations.json";
+    private static final DateTimeFormatter ID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    public record FileRef(String hash, long size) {}
+
+    public static class Generation {
+        public String id;
+        public String game_version;
+        public String created_at;
+        public Map<String, FileRef> files = new LinkedHashMap<>();
+
+        public long size() {
+            long total = 0;
+            for (FileRef file : files.values()) {
+                total += Math.max(0, file.size());
+            }
+            return total;
+        }
+    }
+
+    private static class IndexFile {
+        public int version = 1;
+        public String active;
+        // 按创建或最近使用的先后排列
+        public List<Generation> generations = new ArrayList<>();
+        // 上次删除失败（如被占用）的文件，下次切换时重试
+        public List<String> prune = new ArrayList<>();
+    }
+
+    private final Path gameDir;
+    private final IndexFile index;
+
+    private Generations(Path gameDir, IndexFile index) {
+        this.gameDir = gameDir;
+        this.index = index;
+    }
+
+    public static Generations load(Path gameDir) {
+        Path path = gameDir.resolve(INDEX);
+        if (Files.exists(path)) {
+            try (Reader reader = Files.newBufferedReader(path)) {
+                IndexFile index = GSON.fromJson(reader, IndexFile.class);
+                if (index != null && index.generations != null) {
+                    if (index.prune == null) {
+                        index.prune = new ArrayList<>();
+                    }
+                    return new Generations(gameDir, index);
+                }
+            } catch (IOException | JsonParseException e) {
+                LOGGER.warn("[QUDL] 版本记录损坏，将重新建立: {}", e.getMessage());
+            }
+        }
+        return new Generations(gameDir, new IndexFile());
+    }
+
+    // 本游戏目录在共享存储中的标识，用于记录需要保留的文件
+    public String owner() {
+        return DigestUtils.sha256Hex(gameDir.toAbsolutePath().normalize().toString()).substring(0, 16);
+    }
+
+    public List<Generation> list() {
+        return List.copyOf(index.generations);
+    }
+
+    public Generation active() {
+        return find(index.active);
+    }
+
+    public Generation find(String id) {
+        for (Generation generation : index.generations) {
+            if (generation.id.equals(id)) {
+                return generation;
+            }
+        }
+        return null;
+    }
+
+    // 活动代之前最近的一代，用于回滚
+    public Generation previous() {
+        Generation previous = null;
+        for (Generation generation : index.generations) {
+            if (generation.id.equals(index.active)) {
+                return previous;
+            }
+            previous = generation;
+        }
+        return previous;
+    }
+
+    // 记录一个文件集合；与已有的某一代内容相同时复用它并移到最后
+    public Generation record(String gameVersion, Map<String, FileRef> files) {
+        for (Iterator<Generation> iterator = index.generations.iterator(); iterator.hasNext(); ) {
+            Generation generation = iterator.next();
+            if (sameFiles(generation.files, files)) {
+                iterator.remove();
+                index.generations.add(generation);
+                return generation;
+            }
+        }
+        Generation generation = new Generation();
+        LocalDateTime now = LocalDateTime.now();
+        generation.id = uniqueId(now.format(ID_FORMAT));
+        generation.game_version = gameVersion;
+        generation.created_at = now.toString();
+        generation.files = new LinkedHashMap<>(files);
+        index.generations.add(generation);
+        return generation;
+    }
+
+    // mods 目录已与 generation 一致后调用：设为活动代，并删除上一活动代中不属于它的文件，返回删除的文件数
+    public int commit(Generation generation, Path modsDir) {
+        Set<String> orphans = new LinkedHashSet<>(index.prune);
+        Generation current = active();
+        if (current != null && current != generation) {
+            for (Map.Entry<String, FileRef> entry : current.files.entrySet()) {
+                if (!generation.files.containsKey(entry.getKey())) {
+                    orphans.add(entry.getKey());
+                }
+            }
+        }
+        index.active = generation.id;
+        index.prune.clear();
+
+        int removed = 0;
+        for (String filename : orphans) {
+            if (generation.files.containsKey(filename)) {
+                continue;
+            }
+            try {
+                if (Files.deleteIfExists(modsDir.resolve(filename))) {
+                    removed++;
+                    LOGGER.debug("[QUDL] 已删除不再需要的文件: {}", filename);
+                }
+            } catch (IOException e) {
+                LOGGER.warn("[QUDL] 文件被占用，下次切换时再删除: {}", filename);
+                index.prune.add(filename);
+            }
+        }
+        return removed;
+    }
+
+    // 用存储中保留的文件将 mods 切换到指定的代；缺少任何文件时不做修改并返回 false
+    public boolean activate(Generation target, Path modsDir, BlobStore store) {
+        Generation current = active();
+        List<Map.Entry<String, FileRef>> changed = new ArrayList<>();
+        for (Map.Entry<String, FileRef> entry : target.files.entrySet()) {
+            FileRef installed = current == null ? null : current.files.get(entry.getKey());
+            Path file = modsDir.resolve(entry.getKey());
+            // 活动代中相同的文件只核对大小
+            if (entry.getValue().equals(installed) && Files.isRegularFile(file) && sizeMatches(file, installed)) {
+                continue;
+            }
+            if (!Files.isRegularFile(store.blob(entry.getValue().hash()))) {
+                LOGGER.error("[QUDL] 本地存储中缺少 {}，无法离线切换到 {}", entry.getKey(), target.id);
+                return false;
+            }
+            changed.add(entry);
+        }
+
+        try {
+            Files.createDirectories(modsDir);
+        } catch (IOException e) {
+            LOGGER.error("[QUDL] 无法创建mods目录: {}", e.getMessage());
+            return false;
+        }
+        for (Map.Entry<String, FileRef> entry : changed) {
+            if (!store.install(entry.getValue().hash(), entry.getValue().size(), modsDir.resolve(entry.getKey()))) {
+                LOGGER.error("[QUDL] 无法从本地存储恢复 {}", entry.getKey());
+                return false;
+            }
+        }
+        int removed = commit(target, modsDir);
+        index.generations.remove(target);
+        index.generations.add(target);
+        LOGGER.info("[QUDL] 已切换到 {}：替换 {} 个文件，删除 {} 个文件", target.id, changed.size(), removed);
+        return true;
+    }
+
+    // 从新到旧保留非活动代，直到它们独有的文件总大小超过 budget；返回需要在存储中保留的全部哈希
+    // pending 为已暂存、下次启动时才切换的代，与活动代一样始终保留，可为 null
+    public Set<String> trim(long budget, String pending) {
+        Set<String> keep = new HashSet<>();
+        Generation current = active();
+        Generation staged = find(pending);
+        for (Generation generation : new Generation[]{current, staged}) {
+            if (generation != null) {
+                generation.files.values().forEach(file -> keep.add(file.hash()));
+            }
+        }
+        long used = 0;
+        boolean full = false;
+        for (int i = index.generations.size() - 1; i >= 0; i--) {
+            Generation generation = index.generations.get(i);
+            if (generation == current || generation == staged) {
+                continue;
+            }
+            long cost = 0;
+            for (FileRef file : generation.files.values()) {
+                if (!keep.contains(file.hash())) {
+                    cost += Math.max(0, file.size());
+                }
+            }
+            if (full || used + cost > budget) {
+                full = true;
+                LOGGER.info("[QUDL] 超出容量，移除旧版本 {}", generation.id);
+                index.generations.remove(i);
+                continue;
+            }
+            used += cost;
+            generation.files.values().forEach(file -> keep.add(file.hash()));
+        }
+        return keep;
+    }
+
+    public void save() {
+        Path path = gameDir.resolve(INDEX);
+        try {
+            Files.createDirectories(path.getParent());
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.writeString(tmp, GSON.toJson(index));
+            FileUtils.moveAtomically(tmp, path);
+        } catch (IOException e) {
+            LOGGER.warn("[QUDL] 版本记录保存失败: {}", e.getMessage());
+        }
+    }
+
+    private String uniqueId(String base) {
+        String id = base;
+        for (int i = 2; find(id) != null; i++) {
+            id = base + "-" + i;
+        }
+        return id;
+    }
+
+    private static boolean sameFiles(Map<String, FileRef> a, Map<String, FileRef> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (Map.Entry<String, FileRef> entry : a.entrySet()) {
+            FileRef other = b.get(entry.getKey());
+            if (other == null || !other.hash().equalsIgnoreCase(entry.getValue().hash())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sizeMatches(Path file, FileRef ref) {
+        try {
+            return ref.size() < 0 || Files.size(file) == ref.size();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
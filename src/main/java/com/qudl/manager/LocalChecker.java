@@ -0,0 +1,179 @@
+package com.qudl.manager;
+
+import com.qudl.util.HashIndex;
+import com.qudl.util.HashUtils;
+import com.qudl.util.Metrics;
+import com.qudl.util.QUDLLog;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Semaphore;
+
+// 将 manifest 条目与本地文件比对：大小 → 哈希索引 → 重新计算哈希
+// manifest 声明了快速摘要时用它代替 SHA-256 判断本地文件是否变化
+public class LocalChecker {
+    private static final Logger LOGGER = QUDLLog.LOGGER;
+    // 同时等待哈希计算的文件数上限，超过时暂停解析 manifest
+    private static final int MAX_PENDING_CHECKS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    public interface Callback {
+        void onOutdated(ManifestEntry entry);
+
+        // 确认与 manifest 一致的文件（重新计算或哈希索引命中）；hash 为实际计算过的 SHA-256
+        default void onVerified(ManifestEntry entry, Path file, String hash) {}
+
+        // 按快速摘要确认的文件只有返回 true 时才补算 SHA-256 并调用 onVerified
+        default boolean needsSha256(ManifestEntry entry) {
+            return false;
+        }
+    }
+
+    private final Path dir;
+    private final HashIndex hashIndex;
+    private final Metrics metrics;
+    private final Callback callback;
+    private final Semaphore pendingChecks = new Semaphore(MAX_PENDING_CHECKS);
+
+    public LocalChecker(Path dir, HashIndex hashIndex, Metrics metrics, Callback callback) {
+        this.dir = dir;
+        this.hashIndex = hashIndex;
+        this.metrics = metrics;
+        this.callback = callback;
+    }
+
+    public void check(ManifestEntry entry) throws InterruptedException {
+        metrics.increment("files_checked");
+        String filename = entry.filename();
+        Path filePath = dir.resolve(filename);
+        String fastAlgorithm = entry.fastHash() != null ? entry.fastHashAlgorithm() : null;
+        BasicFileAttributes attrs;
+
+        try {
+            if (Files.notExists(filePath)) {
+                LOGGER.debug("[QUDL] 新文件: {}", filename);
+                callback.onOutdated(entry);
+                return;
+            }
+
+            attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+            // 大小不一致时无需计算哈希
+            if (entry.size() >= 0 && entry.size() != attrs.size()) {
+                LOGGER.debug("[QUDL] 文件大小不一致: {}", filename);
+                callback.onOutdated(entry);
+                return;
+            }
+
+            String cached = hashIndex.lookup(filePath, attrs);
+            if (cached != null) {
+                metrics.increment("hash_index_hits");
+                if (!cached.equalsIgnoreCase(entry.hash())) {
+                    LOGGER.debug("[QUDL] 文件需要更新: {}", filename);
+                    callback.onOutdated(entry);
+                } else {
+                    // 索引中的值来自此前的完整计算，同样交给存储保留，回滚时无需联网
+                    callback.onVerified(entry, filePath, cached);
+                }
+                return;
+            }
+            if (fastAlgorithm != null) {
+                String fastCached = hashIndex.lookupFast(filePath, attrs, fastAlgorithm);
+                if (fastCached != null) {
+                    metrics.increment("hash_index_hits");
+                    if (!fastCached.equalsIgnoreCase(entry.fastHash())) {
+                        LOGGER.debug("[QUDL] 文件需要更新: {}", filename);
+                        callback.onOutdated(entry);
+                        return;
+                    }
+                    // 快速摘要只说明文件未变化，需要按 SHA-256 保存时补算
+                    if (!callback.needsSha256(entry)) {
+                        return;
+                    }
+                    fastAlgorithm = null;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("[QUDL] 文件校验失败: {}", filename, e);
+            return;
+        }
+
+        // 索引未命中或需要补算 SHA-256：交给哈希线程池，等待中的文件过多时阻塞解析
+        pendingChecks.acquire();
+        String submitted = fastAlgorithm;
+        if (submitted != null) {
+            metrics.increment("fast_hash_checks");
+        }
+        String expected = submitted != null ? entry.fastHash() : entry.hash();
+        long hashStart = metrics.start();
+        HashUtils.submit(filePath, submitted).whenComplete((hash, error) -> {
+            // 包含在哈希线程池中排队的时间
+            metrics.record(Metrics.HASH, hashStart);
+            try {
+                if (error != null) {
+                    LOGGER.warn("[QUDL] 哈希计算失败，将重新下载: {} - {}", filename, error.getMessage());
+                    callback.onOutdated(entry);
+                    return;
+                }
+                recordHash(filePath, attrs, submitted, hash);
+                if (!hash.equalsIgnoreCase(expected)) {
+                    LOGGER.debug("[QUDL] 文件需要更新: {}", filename);
+                    callback.onOutdated(entry);
+                } else if (submitted == null) {
+                    callback.onVerified(entry, filePath, hash);
+                } else if (callback.needsSha256(entry)) {
+                    verifySha256(entry, filePath, attrs);
+                }
+            } finally {
+                pendingChecks.release();
+            }
+        });
+    }
+
+    // 等待所有已提交的哈希计算完成
+    public void await() throws InterruptedException {
+        pendingChecks.acquire(MAX_PENDING_CHECKS);
+        pendingChecks.release(MAX_PENDING_CHECKS);
+    }
+
+    // 会话被取消（线程已中断）时使用；本地哈希计算很快结束
+    public void awaitUninterruptibly() {
+        pendingChecks.acquireUninterruptibly(MAX_PENDING_CHECKS);
+        pendingChecks.release(MAX_PENDING_CHECKS);
+    }
+
+    // 在哈希线程中补算 SHA-256，与 manifest 不一致时仍按需要更新处理
+    private void verifySha256(ManifestEntry entry, Path file, BasicFileAttributes attrs) {
+        String hash;
+        try {
+            hash = HashUtils.calculateSHA256(file);
+        } catch (IOException e) {
+            LOGGER.warn("[QUDL] 哈希计算失败，将重新下载: {} - {}", entry.filename(), e.getMessage());
+            callback.onOutdated(entry);
+            return;
+        }
+        recordHash(file, attrs, null, hash);
+        if (hash.equalsIgnoreCase(entry.hash())) {
+            callback.onVerified(entry, file, hash);
+        } else {
+            LOGGER.debug("[QUDL] 文件需要更新: {}", entry.filename());
+            callback.onOutdated(entry);
+        }
+    }
+
+    private void recordHash(Path file, BasicFileAttributes before, String fastAlgorithm, String hash) {
+        try {
+            // 计算期间文件被修改则不写入索引
+            BasicFileAttributes after = Files.readAttributes(file, BasicFileAttributes.class);
+            if (after.size() == before.size() && after.lastModifiedTime().equals(before.lastModifiedTime())) {
+                if (fastAlgorithm != null) {
+                    hashIndex.putFast(file, after, fastAlgorithm, hash);
+                } else {
+                    hashIndex.put(file, after, hash);
+                }
+            }
+        } catch (IOException ignored) {
+        }
+    }
+}
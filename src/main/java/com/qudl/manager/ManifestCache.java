@@ -0,0 +1,171 @@
+package com.qudl.manager;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.qudl.util.FileUtils;
+import com.qudl.util.QUDLLog;
+import org.slf4j.Logger;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// 本地保存上一次的 manifest 及其 ETag / Last-Modified，用于条件请求和离线启动
+public class ManifestCache {
+    private static final Logger LOGGER = QUDLLog.LOGGER;
+    private static final Gson GSON = new Gson();
+    private static final String BODY_FILE = "qudl_manifest_cache.json";
+    private static final String META_FILE = "qudl_manifest_cache.meta.json";
+
+    private final Path body;
+    private final Path metaPath;
+    private final Meta meta;
+
+    private static class Meta {
+        public String url;
+        public String etag;
+        public String last_modified;
+    }
+
+    private ManifestCache(Path configDir, Meta meta) {
+        this.body = configDir.resolve(BODY_FILE);
+        this.metaPath = configDir.resolve(META_FILE);
+        this.meta = meta;
+    }
+
+    public static ManifestCache load() {
+        return load(Path.of("config"));
+    }
+
+    public static ManifestCache load(Path configDir) {
+        Path metaPath = configDir.resolve(META_FILE);
+        if (Files.exists(metaPath) && Files.exists(configDir.resolve(BODY_FILE))) {
+            try (Reader reader = Files.newBufferedReader(metaPath)) {
+                Meta meta = GSON.fromJson(reader, Meta.class);
+                if (meta != null) {
+                    return new ManifestCache(configDir, meta);
+                }
+            } catch (IOException | JsonParseException ignored) {
+            }
+        }
+        return new ManifestCache(configDir, null);
+    }
+
+    // 缓存只对同一地址有效，切换版本或服务器后不再使用
+    public boolean isAvailableFor(String url) {
+        return meta != null && url.equals(meta.url);
+    }
+
+    public String etag() {
+        return meta == null ? null : meta.etag;
+    }
+
+    public String lastModified() {
+        return meta == null ? null : meta.last_modified;
+    }
+
+    public InputStream open() throws IOException {
+        return Files.newInputStream(body);
+    }
+
+    // 边读取边写入缓存，完整读取后才替换旧缓存
+    public Recorder record(String url, String etag, String lastModified, InputStream response) {
+        Meta meta = new Meta();
+        meta.url = url;
+        meta.etag = etag;
+        meta.last_modified = lastModified;
+        return new Recorder(meta, response);
+    }
+
+    public class Recorder extends FilterInputStream {
+        private final Meta meta;
+        private final Path tmp = body.resolveSibling(body.getFileName() + ".tmp");
+        private OutputStream copy;
+
+        private Recorder(Meta meta, InputStream response) {
+            super(response);
+            this.meta = meta;
+            try {
+                Files.createDirectories(body.toAbsolutePath().getParent());
+                this.copy = Files.newOutputStream(tmp);
+            } catch (IOException e) {
+                LOGGER.warn("[QUDL] manifest缓存保存失败: {}", e.getMessage());
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) {
+                write(new byte[]{(byte) value}, 0, 1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                write(b, off, count);
+            }
+            return count;
+        }
+
+        private void write(byte[] b, int off, int len) {
+            if (copy == null) {
+                return;
+            }
+            try {
+                copy.write(b, off, len);
+            } catch (IOException e) {
+                LOGGER.warn("[QUDL] manifest缓存保存失败: {}", e.getMessage());
+                discard();
+            }
+        }
+
+        // manifest 解析成功后调用：读完剩余内容并替换缓存
+        public void commit() throws IOException {
+            transferTo(OutputStream.nullOutputStream());
+            if (copy == null) {
+                return;
+            }
+            try {
+                copy.close();
+                copy = null;
+                FileUtils.moveAtomically(tmp, body);
+                writeAtomically(metaPath, GSON.toJson(meta).getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                LOGGER.warn("[QUDL] manifest缓存保存失败: {}", e.getMessage());
+                discard();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            discard();
+            super.close();
+        }
+
+        private void discard() {
+            if (copy != null) {
+                try {
+                    copy.close();
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                }
+                copy = null;
+            }
+        }
+    }
+
+    private static void writeAtomically(Path path, byte[] data) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(tmp, data);
+        FileUtils.moveAtomically(tmp, path);
+    }
+}
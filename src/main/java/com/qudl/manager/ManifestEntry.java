@@ -0,0 +1,8 @@
+package com.qudl.manager;
+
+import com.qudl.util.FastCDC;
+
+// chunks 为空表示该文件不支持分块增量更新；required 标记的文件（如前置库）优先下载
+// fastHash 为 manifest 声明的快速摘要（算法见 fastHashAlgorithm），只用于本地变化检测，可为空
+public record ManifestEntry(String filename, String hash, long size, FastCDC.Layout chunks, boolean required,
+                            String fastHashAlgorithm, String fastHash) {}
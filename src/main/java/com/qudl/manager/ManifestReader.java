@@ -0,0 +1,173 @@
+package com.qudl.manager;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import com.qudl.util.FastCDC;
+import com.qudl.util.HashUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// 逐条读取 manifest 中的文件条目，不在内存中构建完整的 JSON 树
+public class ManifestReader implements Closeable {
+    private final JsonReader json;
+    private final boolean wrapped;
+    private boolean exhausted;
+    // 分块参数需写在 files 之前才能在流式解析时生效
+    private FastCDC.Params chunkParams = FastCDC.Params.DEFAULT;
+    // 快速摘要算法同样需写在 files 之前；客户端不支持时忽略条目中的快速摘要
+    private String fastHashAlgorithm;
+
+    public ManifestReader(Reader reader) throws IOException {
+        this.json = new JsonReader(reader);
+        this.json.setLenient(true);
+
+        JsonToken token = json.peek();
+        if (token == JsonToken.BEGIN_OBJECT) {
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if (name.equals("files")) {
+                    json.beginArray();
+                    this.wrapped = true;
+                    return;
+                }
+                if (name.equals("chunking") && json.peek() == JsonToken.BEGIN_OBJECT) {
+                    chunkParams = readChunkParams();
+                    continue;
+                }
+                if (name.equals("fast_hash") && json.peek() == JsonToken.STRING) {
+                    String algorithm = json.nextString();
+                    fastHashAlgorithm = HashUtils.isSupported(algorithm) ? algorithm.toLowerCase(Locale.ROOT) : null;
+                    continue;
+                }
+                json.skipValue();
+            }
+            throw new IOException("无效的manifest格式：缺少files字段");
+        }
+        if (token == JsonToken.BEGIN_ARRAY) {
+            json.beginArray();
+            this.wrapped = false;
+            return;
+        }
+        throw new IOException("未知的manifest格式");
+    }
+
+    // 返回下一条文件记录，读取完毕时返回 null
+    public ManifestEntry next() throws IOException {
+        while (!exhausted && json.hasNext()) {
+            if (json.peek() != JsonToken.BEGIN_OBJECT) {
+                json.skipValue();
+                continue;
+            }
+            return readEntry();
+        }
+        if (!exhausted) {
+            exhausted = true;
+            json.endArray();
+            if (wrapped) {
+                while (json.hasNext()) {
+                    json.nextName();
+                    json.skipValue();
+                }
+                json.endObject();
+            }
+        }
+        return null;
+    }
+
+    private ManifestEntry readEntry() throws IOException {
+        String filename = null;
+        String hash = null;
+        long size = -1;
+        List<FastCDC.Chunk> chunks = null;
+        boolean required = false;
+        String fastHash = null;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "filename" -> filename = json.nextString();
+                case "hash" -> hash = json.nextString();
+                case "size" -> size = json.nextLong();
+                case "chunks" -> chunks = readChunks();
+                case "required" -> required = json.nextBoolean();
+                case "fast_hash" -> fastHash = json.nextString();
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if (filename == null || hash == null) {
+            throw new IOException("无效的manifest条目：缺少filename或hash字段");
+        }
+        if (fastHashAlgorithm == null) {
+            fastHash = null;
+        }
+        return new ManifestEntry(filename, hash, size,
+                chunks == null || chunks.isEmpty() ? null : new FastCDC.Layout(chunkParams, chunks), required,
+                fastHash == null ? null : fastHashAlgorithm, fastHash);
+    }
+
+    private FastCDC.Params readChunkParams() throws IOException {
+        FastCDC.Params defaults = FastCDC.Params.DEFAULT;
+        int min = defaults.min();
+        int avg = defaults.avg();
+        int max = defaults.max();
+
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "min" -> min = json.nextInt();
+                case "avg" -> avg = json.nextInt();
+                case "max" -> max = json.nextInt();
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return new FastCDC.Params(min, avg, max);
+    }
+
+    private List<FastCDC.Chunk> readChunks() throws IOException {
+        List<FastCDC.Chunk> chunks = new ArrayList<>();
+        long offset = 0;
+
+        json.beginArray();
+        while (json.hasNext()) {
+            String hash = null;
+            int length = -1;
+            json.beginObject();
+            while (json.hasNext()) {
+                switch (json.nextName()) {
+                    case "hash" -> hash = json.nextString();
+                    case "size" -> length = json.nextInt();
+                    default -> json.skipValue();
+                }
+            }
+            json.endObject();
+
+            if (hash == null || length <= 0) {
+                throw new IOException("无效的manifest条目：分块缺少hash或size字段");
+            }
+            chunks.add(new FastCDC.Chunk(offset, length, hash));
+            offset += length;
+        }
+        json.endArray();
+        return chunks;
+    }
+
+    @Override
+    public void close() throws IOException {
+        json.close();
+    }
+}
@@ -1,145 +1,380 @@
 package com.qudl.manager;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
-import com.qudl.client.QUDLClientMod;
 import com.qudl.config.QUDLConfig;
-import com.qudl.gui.QUDLProgressScreen;
+import com.qudl.network.MirrorSet;
 import com.qudl.network.QUDLDownloader;
-import com.qudl.util.HashUtils;
-import net.minecraft.client.MinecraftClient;
+import com.qudl.util.BlobStore;
+import com.qudl.util.FastCDC;
+import com.qudl.util.HashIndex;
+import com.qudl.util.Metrics;
+import com.qudl.util.QUDLLog;
 import org.slf4j.Logger;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.*;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class QUDLUpdateManager {
-    private static final Logger LOGGER = QUDLClientMod.LOGGER;
+    private static final Logger LOGGER = QUDLLog.LOGGER;
+
     private final AtomicInteger activeDownloads = new AtomicInteger(0);
+    private final AtomicInteger queuedDownloads = new AtomicInteger(0);
+    private final AtomicInteger failures = new AtomicInteger(0);
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+    private final UpdateProgress progress = new UpdateProgress();
+    private final Metrics metrics = new Metrics();
+    private volatile boolean scanFinished;
+    // manifest 完整处理完毕，后台模式据此判断暂存集是否可信
+    private volatile boolean scanCompleted;
+    // manifest 处理失败后不再排队新的下载，仍在进行的哈希回调直接忽略
+    private volatile boolean scanFailed;
+    private volatile boolean cancelled;
+    private volatile Result result;
+    private final QUDLConfig config;
+    // 游戏根目录，mods、配置、缓存和统计报告都位于其下
+    private final Path gameDir;
+    private final Path mirrorStats;
+    private final boolean background;
+    private final HttpClient httpClient;
+    private HashIndex hashIndex;
+    private volatile Future<?> task;
+    private volatile QUDLDownloader downloader;
+    private MirrorSet apiMirrors;
+    private MirrorSet modsMirrors;
+    private BlobStore store;
+    private StagedUpdate staged;
+    private Path modsDir;
+    private LocalChecker checker;
+    // manifest 中的全部文件，会话成功后记录为一个版本
+    private final Map<String, Generations.FileRef> manifestFiles = new LinkedHashMap<>();
+    // 等待合并为一次打包请求的小文件
+    private final List<QUDLDownloader.BundleItem> bundle = new ArrayList<>();
+    // 下载写入的目录：前台模式为 mods，后台模式为暂存目录
+    private Path downloadDir;
+    // 监听者接入前的回调，接入后按顺序执行
+    private final List<Consumer<UpdateListener>> pendingView = new ArrayList<>();
+    private UpdateListener view;
+
+    // 会话结果：updated 为本次下载或安装的文件数
+    public record Result(int updated, int failed, boolean cancelled, boolean background) {
+        public boolean isEmpty() {
+            return updated == 0 && failed == 0;
+        }
+    }
+
+    // 通常由 QUDLUpdateService 创建；压测等场景可直接创建多个互相独立的会话
+    // background 为 true 时更新下载到暂存目录，下次启动时应用
+    public QUDLUpdateManager(QUDLConfig config, Path gameDir, boolean background, HttpClient httpClient) {
+        this.config = config;
+        this.gameDir = gameDir;
+        this.mirrorStats = gameDir.resolve("config/qudl_mirrors.json");
+        this.background = background;
+        this.httpClient = httpClient;
+    }
+
+    public UpdateProgress progress() {
+        return progress;
+    }
+
+    public boolean isBackground() {
+        return background;
+    }
+
+    public boolean isFinished() {
+        return finished.get();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // 会话结束前返回 null
+    public Result result() {
+        return result;
+    }
+
+    public static boolean isStagedMode(QUDLConfig config) {
+        return "staged".equalsIgnoreCase(config.download.apply_mode);
+    }
 
-    public void checkForUpdates() {
-        LOGGER.info("[QUDL] 开始检查更新...");
-        MinecraftClient.getInstance().execute(() -> {
-            if (MinecraftClient.getInstance().currentScreen == null) {
-                MinecraftClient.getInstance().setScreen(new QUDLProgressScreen());
+    // 接入监听者并执行此前积累的回调，会话已结束时会立即收到 onFinished
+    public void attach(UpdateListener view) {
+        List<Consumer<UpdateListener>> actions;
+        synchronized (pendingView) {
+            this.view = view;
+            actions = new ArrayList<>(pendingView);
+            pendingView.clear();
+        }
+        for (Consumer<UpdateListener> action : actions) {
+            action.accept(view);
+        }
+    }
+
+    // 停止解析和排队，断开所有连接；未完成的文件保留 .part，下次检查时续传
+    // 会话已结束并在倒计时中时只取消自动退出
+    void cancel() {
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
+        if (finished.get()) {
+            return;
+        }
+        LOGGER.info("[QUDL] 正在取消更新...");
+        Future<?> running = task;
+        if (running != null) {
+            running.cancel(true);
+        }
+        QUDLDownloader current = downloader;
+        if (current != null) {
+            current.cancel();
+        }
+        maybeFinish();
+    }
+
+    private void onView(Consumer<UpdateListener> action) {
+        UpdateListener current;
+        synchronized (pendingView) {
+            if (view == null) {
+                pendingView.add(action);
+                return;
             }
-        });
+            current = view;
+        }
+        action.accept(current);
+    }
 
-        Executors.newSingleThreadExecutor().execute(() -> {
+    public void start(ExecutorService executor) {
+        LOGGER.info(background ? "[QUDL] 开始后台检查更新..." : "[QUDL] 开始检查更新...");
+        task = executor.submit(() -> {
             try {
-                JsonArray manifest = fetchManifest();
-                List<DownloadTask> updates = compareFiles(manifest);
-
-                if (updates.isEmpty()) {
-                    LOGGER.info("[QUDL] 没有需要更新的内容");
-                    closeProgressScreen();
-                    return;
+                downloader = new QUDLDownloader(httpClient, config.download, background, metrics);
+                setupMirrors();
+                hashIndex = HashIndex.load(gameDir.resolve("config/qudl_hash_index.json"));
+                store = BlobStore.open(config.store);
+                modsDir = gameDir.resolve("mods");
+                staged = StagedUpdate.load(gameDir);
+                if (background) {
+                    downloadDir = staged.directory();
+                    Files.createDirectories(downloadDir);
+                } else {
+                    // 直接更新 mods 时旧的暂存集已过期
+                    staged.discard();
+                    downloadDir = modsDir;
                 }
+                downloader.setDeltaSource(modsDir);
+                checker = new LocalChecker(modsDir, hashIndex, metrics, new LocalChecker.Callback() {
+                    @Override
+                    public void onOutdated(ManifestEntry entry) {
+                        queueDownload(entry);
+                    }
+
+                    @Override
+                    public void onVerified(ManifestEntry entry, Path file, String hash) {
+                        if (store != null) {
+                            store.adopt(hash, file);
+                        }
+                    }
+
+                    @Override
+                    public boolean needsSha256(ManifestEntry entry) {
+                        return store != null && !store.contains(entry.hash());
+                    }
+                });
 
-                LOGGER.info("[QUDL] 发现 {} 个需要更新的文件", updates.size());
-                updateUIStatus(updates.size());
-                startDownloads(updates);
+                // 解析、校验、下载流水线进行：每读到一条记录立即校验，需要更新的文件立即开始下载
+                long scanStart = metrics.start();
+                fetchManifest();
+                checker.await();
+                metrics.record(Metrics.SCAN, scanStart);
+                scanCompleted = true;
+
+                if (queuedDownloads.get() > 0) {
+                    LOGGER.info("[QUDL] 发现 {} 个需要更新的文件", queuedDownloads.get());
+                }
             } catch (Exception e) {
-                LOGGER.error("[QUDL] 更新检查失败: {}", e.getMessage());
-                handleError(e);
+                scanFailed = true;
+                if (cancelled) {
+                    LOGGER.info("[QUDL] 更新检查已取消");
+                } else {
+                    LOGGER.error("[QUDL] 更新检查失败: {}", e.getMessage());
+                    failures.incrementAndGet();
+                    handleError(e);
+                }
+            } finally {
+                // 失败或取消时也要等已提交的哈希计算结束，收尾后不能再有回调排队下载或写入存储
+                if (checker != null) {
+                    checker.awaitUninterruptibly();
+                }
+                flushBundle();
+                scanFinished = true;
+                maybeFinish();
             }
         });
     }
 
-    private JsonArray fetchManifest() throws IOException {
-        QUDLConfig config = QUDLClientMod.config;
-        String apiUrl = buildApiUrl(
-                config.providers.api.base_url,
-                config.providers.api.current_version
-        );
+    // 读取历史统计并探测各服务器延迟，决定首选镜像
+    private void setupMirrors() {
+        String version = config.providers.api.current_version;
+        apiMirrors = MirrorSet.of(config.providers.api.base_url, config.providers.api.mirrors, config.download);
+        modsMirrors = MirrorSet.of(config.providers.mods.base_url, config.providers.mods.mirrors, config.download);
+        apiMirrors.restore(mirrorStats);
+        modsMirrors.restore(mirrorStats);
+        apiMirrors.probe(httpClient, version, config.download.probe_timeout_ms);
+        modsMirrors.probe(httpClient, version + "/", config.download.probe_timeout_ms);
+    }
 
-        HttpURLConnection conn = createConnection(apiUrl);
-        try (InputStreamReader reader = new InputStreamReader(conn.getInputStream())) {
-            return parseManifest(reader);
-        } finally {
-            conn.disconnect();
+    private void fetchManifest() throws IOException, InterruptedException {
+        String version = config.providers.api.current_version;
+        // 缓存以主服务器地址为键，各镜像内容相同
+        String apiUrl = buildApiUrl(config.providers.api.base_url, version);
+
+        ManifestCache cache = ManifestCache.load(gameDir.resolve("config"));
+        boolean cached = cache.isAvailableFor(apiUrl);
+
+        HttpResponse<InputStream> response = null;
+        IOException lastError = null;
+        long requestStart = metrics.start();
+        // 按预计速度依次尝试各服务器
+        for (MirrorSet.Mirror mirror : apiMirrors.ranked(0)) {
+            String url = mirror.resolve(version);
+            try {
+                validateUrl(url);
+                response = sendManifestRequest(url, cached ? cache : null);
+                metrics.record(Metrics.MANIFEST_REQUEST, requestStart);
+                apiMirrors.recordTtfb(mirror, System.nanoTime() - requestStart);
+                break;
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                LOGGER.warn("[QUDL] 无法从 {} 获取manifest: {}", mirror.baseUrl(), e.getMessage());
+                apiMirrors.recordFailure(mirror, e);
+                lastError = e;
+                requestStart = metrics.start();
+            }
+        }
+
+        if (response == null) {
+            IOException e = lastError != null ? lastError : new IOException("没有可用的更新服务器");
+            if (!cached) {
+                throw e;
+            }
+            // 服务器不可达时使用上次的 manifest 继续本地检查
+            LOGGER.warn("[QUDL] 无法连接更新服务器，使用本地缓存的manifest: {}", e.getMessage());
+            metrics.increment("manifest_offline");
+            processCachedManifest(cache);
+            return;
         }
-    }
 
-    private HttpURLConnection createConnection(String apiUrl) throws IOException {
-        HttpURLConnection conn = (HttpURLConnection) new URL(apiUrl).openConnection();
-        conn.setConnectTimeout(10000);
-        conn.setReadTimeout(15000);
-        conn.setRequestMethod("GET");
+        if (response.statusCode() == 304) {
+            response.body().close();
+            LOGGER.info("[QUDL] manifest未变化，使用本地缓存");
+            metrics.increment("manifest_not_modified");
+            processCachedManifest(cache);
+            return;
+        }
 
-        int responseCode = conn.getResponseCode();
-        if (responseCode != 200) {
-            throw new IOException("HTTP " + responseCode);
+        try (ManifestCache.Recorder body = cache.record(
+                apiUrl,
+                response.headers().firstValue("ETag").orElse(null),
+                response.headers().firstValue("Last-Modified").orElse(null),
+                // 响应头之后服务器停止发送时由读取超时中止，取消时同样立即中止
+                downloader.timedBody(response))) {
+            processManifest(body);
+            body.commit();
         }
-        return conn;
     }
 
-    private JsonArray parseManifest(InputStreamReader reader) throws IOException {
-        JsonElement jsonElement = JsonParser.parseReader(reader);
-        if (jsonElement.isJsonObject()) {
-            JsonObject jsonObj = jsonElement.getAsJsonObject();
-            if (jsonObj.has("files")) {
-                return jsonObj.getAsJsonArray("files");
-            }
-            throw new IOException("无效的manifest格式：缺少files字段");
+    private void processCachedManifest(ManifestCache cache) throws IOException, InterruptedException {
+        try (InputStream body = cache.open()) {
+            processManifest(body);
         }
-        if (jsonElement.isJsonArray()) {
-            return jsonElement.getAsJsonArray();
+    }
+
+    private void processManifest(InputStream body) throws IOException, InterruptedException {
+        ManifestReader reader = new ManifestReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        ManifestEntry entry;
+        while ((entry = reader.next()) != null) {
+            manifestFiles.put(entry.filename(), new Generations.FileRef(entry.hash(), entry.size()));
+            checker.check(entry);
         }
-        throw new IOException("未知的manifest格式");
     }
 
-    private List<DownloadTask> compareFiles(JsonArray manifest) {
-        List<DownloadTask> tasks = new ArrayList<>();
-        Path modsDir = MinecraftClient.getInstance().runDirectory.toPath().resolve("mods");
+    private HttpResponse<InputStream> sendManifestRequest(String apiUrl, ManifestCache cache) throws IOException {
+        QUDLConfig.DownloadConfig download = config.download;
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(apiUrl))
+                // 有缓存可用时缩短等待，尽快进入离线检查
+                .timeout(Duration.ofMillis(cache != null ? download.manifest_offline_timeout_ms : download.manifest_timeout_ms))
+                .GET();
+        if (cache != null) {
+            if (cache.etag() != null) {
+                request.header("If-None-Match", cache.etag());
+            }
+            if (cache.lastModified() != null) {
+                request.header("If-Modified-Since", cache.lastModified());
+            }
+        }
 
-        for (JsonElement element : manifest) {
-            if (!element.isJsonObject()) continue;
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("获取manifest被中断");
+        }
 
-            JsonObject entry = element.getAsJsonObject();
-            String filename = entry.get("filename").getAsString();
-            Path filePath = modsDir.resolve(filename);
+        int responseCode = response.statusCode();
+        if (responseCode != 200 && !(responseCode == 304 && cache != null)) {
+            response.body().close();
+            throw new QUDLDownloader.HttpStatusException(responseCode);
+        }
+        return response;
+    }
 
-            try {
-                if (Files.notExists(filePath)) {
-                    tasks.add(createModTask(entry));
-                    LOGGER.debug("[QUDL] 新文件: {}", filename);
-                } else if (HashUtils.validateSHA256(filePath, entry.get("hash").getAsString())) {
-                    tasks.add(createModTask(entry));
-                    LOGGER.debug("[QUDL] 文件需要更新: {}", filename);
-                }
-            } catch (IOException e) {
-                LOGGER.error("[QUDL] 文件校验失败: {}", filename, e);
-            }
+    // 运行中调整下载限速（KB/s），0 表示不限速
+    public void setBandwidthLimit(int kbps) {
+        config.download.bandwidth_limit_kbps = kbps;
+        QUDLDownloader current = downloader;
+        if (current != null) {
+            current.setBandwidthLimit(kbps);
         }
-        return tasks;
     }
 
-    private DownloadTask createModTask(JsonObject entry) throws MalformedURLException {
-        QUDLConfig config = QUDLClientMod.config;
-        String filename = entry.get("filename").getAsString();
+    private DownloadTask createModTask(ManifestEntry entry) throws MalformedURLException {
+        String filename = entry.filename();
         String version = config.providers.api.current_version;
-        String modUrl = buildModUrl(
-                config.providers.mods.base_url,
-                version,
-                filename
-        );
+        String path = buildModPath(version, filename);
 
-        validateUrl(modUrl);
+        for (MirrorSet.Mirror mirror : modsMirrors.mirrors()) {
+            validateUrl(mirror.resolve(path));
+        }
         return new DownloadTask(
-                modUrl,
+                path,
                 filename,
-                entry.get("hash").getAsString(),
-                entry.get("size").getAsLong()
+                entry.hash(),
+                entry.size(),
+                entry.chunks(),
+                entry.required(),
+                entry.fastHashAlgorithm(),
+                entry.fastHash()
         );
     }
 
@@ -147,10 +382,9 @@ public class QUDLUpdateManager {
         return withTrailingSlash(baseUrl) + version;
     }
 
-    private String buildModUrl(String baseUrl, String version, String filename) {
-        return withTrailingSlash(baseUrl)
-                + version + "/"
-                + URLEncoder.encode(filename, StandardCharsets.UTF_8).replace("+", "%20");
+    // 相对于 mods 服务器根地址的路径，由各镜像拼接
+    private String buildModPath(String version, String filename) {
+        return version + "/" + URLEncoder.encode(filename, StandardCharsets.UTF_8).replace("+", "%20");
     }
 
     private String withTrailingSlash(String url) {
@@ -164,118 +398,278 @@ public class QUDLUpdateManager {
         }
     }
 
-    private void startDownloads(List<DownloadTask> tasks) {
-        activeDownloads.set(tasks.size());
-        QUDLDownloader downloader = new QUDLDownloader(
-                QUDLClientMod.config.download.threads,
-                QUDLClientMod.config.download.retries
-        );
+    private void queueDownload(ManifestEntry entry) {
+        if (cancelled || scanFailed) {
+            return;
+        }
+        DownloadTask task;
+        try {
+            task = createModTask(entry);
+        } catch (MalformedURLException e) {
+            LOGGER.error("[QUDL] 文件校验失败: {}", entry.filename(), e);
+            return;
+        }
 
-        for (DownloadTask task : tasks) {
-            LOGGER.info("[QUDL] 队列下载任务: {}", task.filename());
-            downloader.downloadFile(
-                    task.url(),
-                    task.filename(),
-                    MinecraftClient.getInstance().runDirectory.toPath().resolve("mods"),
-                    new QUDLDownloader.ProgressListener() {
-                        @Override
-                        public void onStartDownload(String filename) {
-                            LOGGER.info("[QUDL] 开始下载: {}", filename);
-                            updateCurrentFile(filename);
-                        }
+        // 上次后台下载的同版本文件仍在暂存目录中
+        if (background && staged.retain(task.filename(), task.hash())) {
+            LOGGER.debug("[QUDL] 已暂存: {}", task.filename());
+            metrics.increment("staged_reused");
+            return;
+        }
 
-                        @Override
-                        public void onProgress(String filename, long current, long total) {}
+        activeDownloads.incrementAndGet();
+        metrics.increment("files_queued");
+        progress.fileQueued(task.size());
+        if (queuedDownloads.incrementAndGet() == 1) {
+            updateUIStatus();
+        }
 
-                        @Override
-                        public void onComplete(String filename) {
-                            handleDownloadComplete();
-                        }
+        // 本机其他实例或版本已下载过相同内容时直接链接
+        Path target = downloadDir.resolve(task.filename());
+        if (store != null && store.install(task.hash(), task.size(), target)) {
+            LOGGER.info("[QUDL] 从本地存储安装: {}", task.filename());
+            Metrics.FileStats stats = metrics.file(task.filename());
+            stats.queued(task.size());
+            stats.mode("store");
+            stats.finished("ok", null);
+            handleInstalled(task, target);
+            handleDownloadComplete();
+            return;
+        }
 
-                        @Override
-                        public void onError(String filename, Exception e) {
-                            handleDownloadError(filename, e);
-                        }
+        LOGGER.info("[QUDL] 队列下载任务: {}", task.filename());
+        QUDLDownloader.ProgressListener listener = createListener(task, target);
+        long bundleThreshold = config.download.bundle_threshold_kb * 1024L;
+        if (bundleThreshold > 0 && task.size() >= 0 && task.size() <= bundleThreshold) {
+            addToBundle(new QUDLDownloader.BundleItem(task.path(), task.filename(), task.required(), listener));
+            return;
+        }
+        downloader.downloadFile(modsMirrors, task.path(), task.filename(), downloadDir, task.required(), listener);
+    }
 
-                        @Override
-                        public String getExpectedHash(String filename) {
-                            return task.hash();
-                        }
-                    }
-            );
+    private void addToBundle(QUDLDownloader.BundleItem item) {
+        synchronized (bundle) {
+            bundle.add(item);
+            if (bundle.size() < Math.max(1, config.download.bundle_max_files)) {
+                return;
+            }
         }
+        flushBundle();
     }
 
-    private void updateUIStatus(int total) {
-        MinecraftClient.getInstance().execute(() -> {
-            if (MinecraftClient.getInstance().currentScreen instanceof QUDLProgressScreen screen) {
-                screen.setStatus("正在下载更新...");
-                screen.setTotalFiles(total);
+    private void flushBundle() {
+        List<QUDLDownloader.BundleItem> items;
+        synchronized (bundle) {
+            if (bundle.isEmpty()) {
+                return;
             }
-        });
+            items = new ArrayList<>(bundle);
+            bundle.clear();
+        }
+        String path = config.providers.api.current_version + "/bundle";
+        downloader.downloadBundle(modsMirrors, path, items, downloadDir);
     }
 
-    private void updateCurrentFile(String filename) {
-        MinecraftClient.getInstance().execute(() -> {
-            if (MinecraftClient.getInstance().currentScreen instanceof QUDLProgressScreen screen) {
-                screen.setCurrentFile(filename);
-                screen.incrementDownloaded();
+    private QUDLDownloader.ProgressListener createListener(DownloadTask task, Path target) {
+        return new QUDLDownloader.ProgressListener() {
+            @Override
+            public void onStartDownload(String filename) {
+                LOGGER.info("[QUDL] 开始下载: {}", filename);
+                progress.fileStarted(filename, task.size());
             }
-        });
+
+            @Override
+            public void onProgress(String filename, long current, long total) {
+                progress.fileProgress(filename, current);
+            }
+
+            @Override
+            public void onComplete(String filename) {
+                handleInstalled(task, target);
+                if (store != null) {
+                    store.adopt(task.hash(), target);
+                }
+                handleDownloadComplete();
+            }
+
+            @Override
+            public void onError(String filename, Exception e) {
+                progress.fileFailed(filename, task.size());
+                handleDownloadError(filename, e);
+            }
+
+            @Override
+            public String getExpectedHash(String filename) {
+                return task.hash();
+            }
+
+            @Override
+            public long getExpectedSize(String filename) {
+                return task.size();
+            }
+
+            @Override
+            public FastCDC.Layout getChunkLayout(String filename) {
+                return task.chunks();
+            }
+        };
+    }
+
+    private void handleInstalled(DownloadTask task, Path target) {
+        progress.fileCompleted(task.filename(), task.size());
+        if (background) {
+            staged.add(task.filename(), task.hash());
+        } else {
+            // 下载或从存储安装时已按 SHA-256 校验，直接写入索引，下次启动无需重新计算
+            recordDownloadedHash(target, task);
+        }
+    }
+
+    private void recordDownloadedHash(Path file, DownloadTask task) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            hashIndex.put(file, attrs, task.hash());
+            // 内容已按 SHA-256 校验，manifest 中的快速摘要同样可信
+            if (task.fastHash() != null) {
+                hashIndex.putFast(file, attrs, task.fastHashAlgorithm(), task.fastHash());
+            }
+        } catch (IOException e) {
+            LOGGER.debug("[QUDL] 无法记录文件哈希: {}", file.getFileName());
+        }
+    }
+
+    // 文件数和字节进度由界面直接读取 progress，这里只切换状态文字
+    private void updateUIStatus() {
+        onView(view -> view.onStatus("正在下载更新..."));
     }
 
     private void handleDownloadComplete() {
-        if (activeDownloads.decrementAndGet() == 0) {
+        activeDownloads.decrementAndGet();
+        maybeFinish();
+    }
+
+    // manifest 读取完毕且所有下载结束后收尾
+    private void maybeFinish() {
+        if (!scanFinished || activeDownloads.get() > 0 || !finished.compareAndSet(false, true)) {
+            return;
+        }
+        if (hashIndex != null) {
+            hashIndex.save();
+        }
+        if (store != null) {
+            updateGenerations();
+            store.collectGarbage();
+            store.close();
+        }
+        if (downloader != null) {
+            downloader.shutdown();
+        }
+        if (apiMirrors != null) {
+            apiMirrors.persist(mirrorStats);
+            modsMirrors.persist(mirrorStats);
+        }
+        writeReport();
+        if (background) {
+            finishStaged();
+        } else if (cancelled) {
+            LOGGER.info("[QUDL] 更新已取消，已下载的部分将在下次检查时继续");
+        } else if (failures.get() > 0) {
+            LOGGER.warn("[QUDL] 更新未完成，{} 个任务失败", failures.get());
+        } else if (queuedDownloads.get() == 0) {
+            LOGGER.info("[QUDL] 没有需要更新的内容");
+        } else {
             LOGGER.info("[QUDL] 所有下载已完成");
-            MinecraftClient.getInstance().execute(() -> {
-                if (MinecraftClient.getInstance().currentScreen instanceof QUDLProgressScreen screen) {
-                    screen.startCountdown();
-                }
-            });
-
-            new Thread(() -> {
-                try {
-                    logCountdown(3);
-                    logCountdown(2);
-                    logCountdown(1);
-                    MinecraftClient.getInstance().scheduleStop();
-                } catch (InterruptedException e) {
-                    LOGGER.error("[QUDL] 关闭延迟被中断: {}", e.getMessage());
+        }
+        // 游戏仍在加载时等到界面接入后再处理
+        Result done = new Result(queuedDownloads.get(), failures.get(), cancelled, background);
+        result = done;
+        onView(view -> view.onFinished(done));
+    }
+
+    // 记录本次 manifest 对应的版本并更新存储中需要保留的文件
+    // 前台模式此时 mods 已与 manifest 一致，直接切换并删除上一版本独有的文件；后台模式在应用暂存更新时切换
+    private void updateGenerations() {
+        Generations generations = Generations.load(gameDir);
+        if (!config.generations.enabled) {
+            store.pin(generations.owner(), List.of());
+            return;
+        }
+        if (scanCompleted && failures.get() == 0 && !cancelled && !manifestFiles.isEmpty()) {
+            Generations.Generation generation = generations.record(config.providers.api.current_version, manifestFiles);
+            if (!background) {
+                int removed = generations.commit(generation, modsDir);
+                if (removed > 0) {
+                    LOGGER.info("[QUDL] 已删除 {} 个不再需要的文件", removed);
                 }
-            }).start();
+            } else if (generations.active() != generation) {
+                staged.setGeneration(generation.id);
+            }
         }
+        // 暂存的版本尚未切换，超出容量也不能移除，否则下次启动时无法应用
+        String pending = staged != null ? staged.generation() : null;
+        store.pin(generations.owner(), generations.trim(config.generations.max_size_mb * 1024L * 1024L, pending));
+        generations.save();
     }
 
-    private void logCountdown(int seconds) throws InterruptedException {
-        Thread.sleep(1000);
-        LOGGER.info("[QUDL] 倒计时{}秒...", seconds);
+    private void writeReport() {
+        Map<String, Object> session = new LinkedHashMap<>();
+        session.put("mode", background ? "staged" : "restart");
+        session.put("game_version", config.providers.api.current_version);
+        session.put("server", config.providers.api.base_url);
+        session.put("files_updated", queuedDownloads.get());
+        session.put("failures", failures.get());
+        session.put("cancelled", cancelled);
+        if (downloader != null && downloader.concurrencyReport() != null) {
+            session.put("concurrency", downloader.concurrencyReport());
+        }
+        Path report = metrics.write(gameDir.resolve("logs"), session);
+        if (report != null) {
+            LOGGER.info("[QUDL] 统计报告已保存: {}", report);
+        }
     }
 
-    private void handleDownloadError(String filename, Exception e) {
-        LOGGER.error("[QUDL] 文件下载失败: {} - {}", filename, e.getMessage());
-        if (activeDownloads.decrementAndGet() == 0) {
-            closeProgressScreen();
+    private void finishStaged() {
+        // manifest 未完整处理时无法判断哪些暂存文件已过期，保持原样
+        if (!scanCompleted || staged == null) {
+            LOGGER.warn("[QUDL] 后台更新检查未完成");
+            return;
+        }
+        try {
+            staged.finish(failures.get() == 0 && !cancelled);
+        } catch (IOException e) {
+            LOGGER.warn("[QUDL] 暂存更新记录保存失败: {}", e.getMessage());
+            return;
+        }
+
+        if (cancelled) {
+            LOGGER.info("[QUDL] 后台更新已取消，下次检查时继续");
+        } else if (failures.get() > 0) {
+            LOGGER.warn("[QUDL] 后台更新未完成，{} 个任务失败，下次检查时继续", failures.get());
+        } else if (staged.isReady()) {
+            LOGGER.info("[QUDL] 更新已在后台下载完成，将在下次启动时应用");
+        } else {
+            LOGGER.info("[QUDL] 没有需要更新的内容");
         }
-        MinecraftClient.getInstance().execute(() -> {
-            if (MinecraftClient.getInstance().currentScreen instanceof QUDLProgressScreen screen) {
-                screen.showError(e.getMessage());
-            }
-        });
     }
 
-    private void closeProgressScreen() {
-        MinecraftClient.getInstance().execute(() ->
-                MinecraftClient.getInstance().setScreen(null)
-        );
+    private void handleDownloadError(String filename, Exception e) {
+        if (cancelled) {
+            LOGGER.debug("[QUDL] 下载已取消: {}", filename);
+            activeDownloads.decrementAndGet();
+            maybeFinish();
+            return;
+        }
+        LOGGER.error("[QUDL] 文件下载失败: {} - {}", filename, e.getMessage());
+        failures.incrementAndGet();
+        activeDownloads.decrementAndGet();
+        maybeFinish();
+        onView(view -> view.onError(e.getMessage()));
     }
 
     private void handleError(Exception e) {
-        MinecraftClient.getInstance().execute(() -> {
-            if (MinecraftClient.getInstance().currentScreen instanceof QUDLProgressScreen screen) {
-                screen.showError(e.getMessage());
-            }
-        });
+        onView(view -> view.onError(e.getMessage()));
     }
 
-    private record DownloadTask(String url, String filename, String hash, long size) {}
+    private record DownloadTask(String path, String filename, String hash, long size, FastCDC.Layout chunks, boolean required,
+                                String fastHashAlgorithm, String fastHash) {}
 }
\ No newline at end of file
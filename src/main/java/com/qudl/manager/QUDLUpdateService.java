@@ -0,0 +1,60 @@
+package com.qudl.manager;
+
+import com.qudl.config.QUDLConfig;
+import com.qudl.network.QUDLHttp;
+import com.qudl.util.QUDLLog;
+import org.slf4j.Logger;
+
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// 进程内唯一的更新服务：同一时间只运行一个会话，重复的检查请求合并到正在进行的会话
+public class QUDLUpdateService {
+    private static final Logger LOGGER = QUDLLog.LOGGER;
+    private static final QUDLUpdateService INSTANCE = new QUDLUpdateService();
+
+    // 会话主线程（解析 manifest、收尾），各会话共用
+    private final ExecutorService sessionExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "QUDL-Session");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private HttpClient httpClient;
+    private QUDLUpdateManager current;
+
+    private QUDLUpdateService() {
+    }
+
+    public static QUDLUpdateService get() {
+        return INSTANCE;
+    }
+
+    // 有会话正在进行时直接返回它，否则开始新的会话；gameDir 下需包含 mods 目录
+    public synchronized QUDLUpdateManager check(QUDLConfig config, Path gameDir, boolean background) {
+        if (current != null && !current.isFinished()) {
+            LOGGER.info("[QUDL] 更新检查正在进行，复用当前会话");
+            return current;
+        }
+        if (httpClient == null) {
+            httpClient = QUDLHttp.newClient(config.download);
+        }
+        current = new QUDLUpdateManager(config, gameDir, background, httpClient);
+        current.start(sessionExecutor);
+        return current;
+    }
+
+    // 最近一次会话，可能已结束；没有开始过时返回 null
+    public synchronized QUDLUpdateManager current() {
+        return current;
+    }
+
+    // 中止正在进行的会话：断开连接，已下载部分保留，下次检查时续传
+    // 会话已结束时只标记取消，用于停止完成后的自动退出
+    public synchronized void cancel() {
+        if (current != null) {
+            current.cancel();
+        }
+    }
+}
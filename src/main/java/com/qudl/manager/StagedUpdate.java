@@ -0,0 +1,214 @@
+package com.qudl.manager;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.qudl.util.FileUtils;
+import com.qudl.util.QUDLLog;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// 后台预下载的更新集：文件先写入暂存目录，全部成功后标记为完整，下次启动时一次性放入 mods
+public class StagedUpdate {
+    private static final Logger LOGGER = QUDLLog.LOGGER;
+    private static final String DIRECTORY = "qudl_staging";
+    private static final String MANIFEST = "staged.json";
+    private static final Gson GSON = new Gson();
+
+    private final Path dir;
+    // 文件名 -> SHA-256
+    private final Map<String, String> files;
+    // 本次检查中仍然需要的文件，其余为过期的暂存文件
+    private final Set<String> retained = ConcurrentHashMap.newKeySet();
+    private boolean complete;
+    // 应用后 mods 对应的版本，见 Generations
+    private String generation;
+
+    private static class StagedFile {
+        public int version = 1;
+        // 只有完整的更新集才会在启动时应用，避免混用新旧版本
+        public boolean complete;
+        public Map<String, String> files = new ConcurrentHashMap<>();
+        public String generation;
+    }
+
+    private StagedUpdate(Path dir, Map<String, String> files, boolean complete, String generation) {
+        this.dir = dir;
+        this.files = new ConcurrentHashMap<>(files);
+        this.complete = complete;
+        this.generation = generation;
+    }
+
+    public static StagedUpdate load(Path gameDir) {
+        Path dir = gameDir.resolve(DIRECTORY);
+        Path manifest = dir.resolve(MANIFEST);
+        if (Files.exists(manifest)) {
+            try (Reader reader = Files.newBufferedReader(manifest)) {
+                StagedFile file = GSON.fromJson(reader, StagedFile.class);
+                if (file != null && file.files != null) {
+                    return new StagedUpdate(dir, file.files, file.complete, file.generation);
+                }
+            } catch (IOException | JsonParseException e) {
+                LOGGER.warn("[QUDL] 暂存更新记录损坏，将重新下载: {}", e.getMessage());
+            }
+        }
+        return new StagedUpdate(dir, Map.of(), false, null);
+    }
+
+    public Path directory() {
+        return dir;
+    }
+
+    // 暂存目录中已有该版本的文件时保留，无需重新下载
+    public boolean retain(String filename, String hash) {
+        if (hash.equalsIgnoreCase(files.get(filename)) && Files.isRegularFile(dir.resolve(filename))) {
+            retained.add(filename);
+            return true;
+        }
+        return false;
+    }
+
+    public void add(String filename, String hash) {
+        files.put(filename, hash);
+        retained.add(filename);
+    }
+
+    // 应用时切换到该版本，删除上一版本独有的文件；没有需要下载的文件时也会在下次启动时执行
+    public void setGeneration(String generation) {
+        this.generation = generation;
+    }
+
+    // 等待应用的版本，没有时为 null
+    public String generation() {
+        return generation;
+    }
+
+    public boolean isReady() {
+        return complete && (!files.isEmpty() || generation != null);
+    }
+
+    // 结束一次后台检查：移除不再需要的暂存文件，complete 表示所有文件都已下载成功
+    public void finish(boolean complete) throws IOException {
+        Iterator<String> iterator = files.keySet().iterator();
+        while (iterator.hasNext()) {
+            String filename = iterator.next();
+            if (!retained.contains(filename)) {
+                iterator.remove();
+                Files.deleteIfExists(dir.resolve(filename));
+            }
+        }
+        this.complete = complete;
+        if (files.isEmpty() && generation == null) {
+            Files.deleteIfExists(dir.resolve(MANIFEST));
+        } else {
+            save();
+        }
+    }
+
+    private void save() throws IOException {
+        StagedFile file = new StagedFile();
+        file.complete = complete;
+        file.files = files;
+        file.generation = generation;
+        Files.createDirectories(dir);
+        Path manifest = dir.resolve(MANIFEST);
+        Path tmp = dir.resolve(MANIFEST + ".tmp");
+        Files.writeString(tmp, GSON.toJson(file));
+        FileUtils.moveAtomically(tmp, manifest);
+    }
+
+    // 前台更新直接写入 mods 时丢弃旧的暂存集，避免下次启动用旧版本覆盖
+    public void discard() {
+        files.clear();
+        complete = false;
+        generation = null;
+        try {
+            Files.deleteIfExists(dir.resolve(MANIFEST));
+        } catch (IOException e) {
+            LOGGER.warn("[QUDL] 无法清理暂存更新: {}", e.getMessage());
+        }
+    }
+
+    // 将暂存文件移入 mods 目录，返回已应用的文件数；被占用的文件保留到下次启动
+    public int apply(Path modsDir) {
+        if (!isReady()) {
+            return 0;
+        }
+        int applied = 0;
+        try {
+            Files.createDirectories(modsDir);
+        } catch (IOException e) {
+            LOGGER.error("[QUDL] 无法创建mods目录: {}", e.getMessage());
+            return 0;
+        }
+
+        Iterator<Map.Entry<String, String>> iterator = files.entrySet().iterator();
+        while (iterator.hasNext()) {
+            String filename = iterator.next().getKey();
+            Path source = dir.resolve(filename);
+            if (!Files.isRegularFile(source)) {
+                iterator.remove();
+                continue;
+            }
+            try {
+                FileUtils.moveAtomically(source, modsDir.resolve(filename));
+                iterator.remove();
+                applied++;
+            } catch (FileSystemException e) {
+                // Windows 下已加载的 jar 无法替换
+                LOGGER.warn("[QUDL] 文件被占用，下次启动时再应用: {}", filename);
+            } catch (IOException e) {
+                LOGGER.error("[QUDL] 应用暂存更新失败: {} - {}", filename, e.getMessage());
+            }
+        }
+
+        try {
+            if (files.isEmpty()) {
+                commitGeneration(modsDir);
+                Files.deleteIfExists(dir.resolve(MANIFEST));
+                cleanup();
+            } else {
+                save();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("[QUDL] 暂存更新记录保存失败: {}", e.getMessage());
+        }
+        return applied;
+    }
+
+    private void commitGeneration(Path modsDir) {
+        if (generation == null) {
+            return;
+        }
+        Generations generations = Generations.load(dir.getParent());
+        Generations.Generation target = generations.find(generation);
+        if (target != null) {
+            int removed = generations.commit(target, modsDir);
+            generations.save();
+            if (removed > 0) {
+                LOGGER.info("[QUDL] 已删除 {} 个不再需要的文件", removed);
+            }
+        }
+        generation = null;
+    }
+
+    // 清理暂存目录中残留的未完成下载
+    private void cleanup() throws IOException {
+        try (Stream<Path> stream = Files.list(dir)) {
+            for (Path path : (Iterable<Path>) stream::iterator) {
+                if (Files.isRegularFile(path)) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+}
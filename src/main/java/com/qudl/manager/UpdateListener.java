@@ -0,0 +1,12 @@
+package com.qudl.manager;
+
+// 更新会话的回调；核心不依赖游戏类，游戏内界面和命令行各自实现
+// 会话可能在监听者接入前（preLaunch）开始，此前的回调在 attach 时按顺序补发
+public interface UpdateListener {
+    void onStatus(String message);
+
+    void onError(String message);
+
+    // 会话结束（包括取消）时调用一次
+    void onFinished(QUDLUpdateManager.Result result);
+}
@@ -0,0 +1,101 @@
+package com.qudl.manager;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// 下载进度汇总：下载线程只更新计数器，界面每帧读取一次，不需要切换到渲染线程
+public class UpdateProgress {
+    public static class FileProgress {
+        public final String filename;
+        public final long size;
+        private final AtomicLong done = new AtomicLong();
+
+        private FileProgress(String filename, long size) {
+            this.filename = filename;
+            this.size = size;
+        }
+
+        public long done() {
+            return done.get();
+        }
+    }
+
+    private final LongAdder totalBytes = new LongAdder();
+    private final LongAdder doneBytes = new LongAdder();
+    private final AtomicInteger totalFiles = new AtomicInteger();
+    private final AtomicInteger completedFiles = new AtomicInteger();
+    private final AtomicInteger failedFiles = new AtomicInteger();
+    private final Map<String, FileProgress> active = new ConcurrentHashMap<>();
+
+    public void fileQueued(long size) {
+        totalFiles.incrementAndGet();
+        if (size > 0) {
+            totalBytes.add(size);
+        }
+    }
+
+    public void fileStarted(String filename, long size) {
+        active.putIfAbsent(filename, new FileProgress(filename, size));
+    }
+
+    // current 为该文件已完成的字节数；分段下载时各线程上报的值可能乱序，只取最大值
+    public void fileProgress(String filename, long current) {
+        FileProgress file = active.get(filename);
+        if (file == null) {
+            return;
+        }
+        long previous = file.done.getAndAccumulate(current, Math::max);
+        if (current > previous) {
+            doneBytes.add(current - previous);
+        }
+    }
+
+    public void fileCompleted(String filename, long size) {
+        FileProgress file = active.remove(filename);
+        long counted = file == null ? 0 : file.done();
+        if (size > counted) {
+            doneBytes.add(size - counted);
+        }
+        completedFiles.incrementAndGet();
+    }
+
+    // 失败的文件不再计入总量
+    public void fileFailed(String filename, long size) {
+        FileProgress file = active.remove(filename);
+        if (file != null) {
+            doneBytes.add(-file.done());
+        }
+        if (size > 0) {
+            totalBytes.add(-size);
+        }
+        failedFiles.incrementAndGet();
+    }
+
+    public long totalBytes() {
+        return totalBytes.sum();
+    }
+
+    public long doneBytes() {
+        return doneBytes.sum();
+    }
+
+    public int totalFiles() {
+        return totalFiles.get();
+    }
+
+    public int completedFiles() {
+        return completedFiles.get();
+    }
+
+    public int failedFiles() {
+        return failedFiles.get();
+    }
+
+    public Collection<FileProgress> activeFiles() {
+        return active.values();
+    }
+}
@@ -0,0 +1,174 @@
+package com.qudl.network;
+
+import com.qudl.util.QUDLLog;
+import org.slf4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+// 按总吞吐和首字节延迟调整同时下载的文件数：
+// 延迟明显高于此前最低水平说明连接在排队，按比例减少；否则逐个增加，增加后吞吐没有提升就停止，下降则退回
+class AdaptiveConcurrency {
+    private static final Logger LOGGER = QUDLLog.LOGGER;
+    private static final long INTERVAL_MS = 2000;
+    // 增加一个连接后吞吐至少提升该比例才继续增加
+    private static final double MIN_GAIN = 0.05;
+    // 增加后吞吐下降超过该比例时退回
+    private static final double MAX_LOSS = 0.10;
+    // 窗口平均首字节延迟超过最低值的该倍数，且至少高出 MIN_LATENCY_RISE_MS 时减少
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final long MIN_LATENCY_RISE_MS = 50;
+    private static final double DECREASE_FACTOR = 0.75;
+    // 停止增加或减少后，等待若干个周期再重新试探
+    private static final int HOLD_INTERVALS = 5;
+    private static final int MAX_SAMPLES = 120;
+
+    private record Sample(long elapsedMs, int limit, long throughputKbps, long ttfbMs) {}
+
+    private final int min;
+    private final int max;
+    private final int initial;
+    private final IntConsumer apply;
+    private final LongSupplier bytes;
+    private final IntSupplier demand;
+    private final long startNanos = System.nanoTime();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "QUDL-Concurrency");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Deque<Sample> samples = new ArrayDeque<>();
+    private int limit;
+    private int adjustments;
+    private long lastBytes;
+    private long lastTime = System.nanoTime();
+    private double lastThroughput = -1;
+    private int lastStep;
+    private int hold;
+    private long minLatencyNanos = Long.MAX_VALUE;
+    private long latencyNanos;
+    private int latencyCount;
+
+    // apply 设置实际并发数，bytes 为累计下载字节，demand 为正在下载和排队的文件数
+    AdaptiveConcurrency(int initial, int min, int max, IntConsumer apply, LongSupplier bytes, IntSupplier demand) {
+        this.min = Math.max(1, min);
+        this.max = Math.max(this.min, max);
+        this.initial = Math.max(this.min, Math.min(this.max, initial));
+        this.limit = this.initial;
+        this.apply = apply;
+        this.bytes = bytes;
+        this.demand = demand;
+        this.lastBytes = bytes.getAsLong();
+        timer.scheduleWithFixedDelay(this::adjust, INTERVAL_MS, INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    int initial() {
+        return initial;
+    }
+
+    // 每个请求从发出到收到响应头的耗时
+    synchronized void onLatency(long nanos) {
+        latencyNanos += nanos;
+        latencyCount++;
+    }
+
+    void shutdown() {
+        timer.shutdownNow();
+        synchronized (this) {
+            if (adjustments > 0) {
+                LOGGER.info("[QUDL] 下载并发：初始 {}，最终 {}，范围 {}-{}，共调整 {} 次", initial, limit, min, max, adjustments);
+            }
+        }
+    }
+
+    synchronized Map<String, Object> report() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("min", min);
+        report.put("max", max);
+        report.put("initial", initial);
+        report.put("final", limit);
+        report.put("adjustments", adjustments);
+        List<Map<String, Object>> history = new ArrayList<>();
+        for (Sample sample : samples) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("t_ms", sample.elapsedMs());
+            entry.put("limit", sample.limit());
+            entry.put("throughput_kbps", sample.throughputKbps());
+            entry.put("ttfb_ms", sample.ttfbMs());
+            history.add(entry);
+        }
+        report.put("samples", history);
+        return report;
+    }
+
+    private synchronized void adjust() {
+        long now = System.nanoTime();
+        long total = bytes.getAsLong();
+        double throughput = (total - lastBytes) * 1e9 / Math.max(1, now - lastTime);
+        long latency = latencyCount == 0 ? -1 : latencyNanos / latencyCount;
+        lastBytes = total;
+        lastTime = now;
+        latencyNanos = 0;
+        latencyCount = 0;
+
+        // 没有排队的文件时吞吐不受并发数限制，这段时间的数据不作为依据
+        if (demand.getAsInt() < limit) {
+            lastThroughput = -1;
+            lastStep = 0;
+            return;
+        }
+        if (latency > 0) {
+            minLatencyNanos = Math.min(minLatencyNanos, latency);
+        }
+        record(now, throughput, latency);
+
+        int next = limit;
+        String reason = null;
+        if (latency > 0 && limit > min && latency > minLatencyNanos * LATENCY_TOLERANCE
+                && latency - minLatencyNanos > TimeUnit.MILLISECONDS.toNanos(MIN_LATENCY_RISE_MS)) {
+            next = Math.max(min, Math.min(limit - 1, (int) (limit * DECREASE_FACTOR)));
+            reason = "延迟升高";
+            hold = HOLD_INTERVALS;
+        } else if (lastStep > 0 && lastThroughput > 0 && throughput < lastThroughput * (1 - MAX_LOSS)) {
+            next = Math.max(min, limit - 1);
+            reason = "吞吐下降";
+            hold = HOLD_INTERVALS;
+        } else if (lastStep > 0 && lastThroughput > 0 && throughput < lastThroughput * (1 + MIN_GAIN)) {
+            // 增加连接没有带来提升，保持当前值
+            hold = HOLD_INTERVALS;
+        } else if (hold > 0) {
+            hold--;
+        } else if (limit < max) {
+            next = limit + 1;
+            reason = "试探增加";
+        }
+
+        lastThroughput = throughput;
+        lastStep = Integer.signum(next - limit);
+        if (next != limit) {
+            LOGGER.info("[QUDL] 下载并发 {} → {}（{}，吞吐 {} KB/s，首字节 {} ms）", limit, next, reason,
+                    (long) (throughput / 1024), latency < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(latency));
+            limit = next;
+            adjustments++;
+            apply.accept(next);
+        }
+    }
+
+    private void record(long now, double throughput, long latency) {
+        if (samples.size() == MAX_SAMPLES) {
+            samples.removeFirst();
+        }
+        samples.addLast(new Sample(TimeUnit.NANOSECONDS.toMillis(now - startNanos), limit, (long) (throughput / 1024),
+                latency < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(latency)));
+    }
+}
@@ -0,0 +1,168 @@
+package com.qudl.network;
+
+import com.google.gson.Gson;
+import com.qudl.util.Metrics;
+import com.qudl.util.QUDLLog;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// 小文件打包下载：一次 POST 提交所需文件的哈希，服务器返回以哈希命名条目的 zip，边接收边解包校验
+class BundleDownload {
+    private static final Logger LOGGER = QUDLLog.LOGGER;
+    private static final Gson GSON = new Gson();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // 服务器没有打包接口
+    static class BundleNotSupportedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        BundleNotSupportedException(String message) {
+            super(message);
+        }
+    }
+
+    private final QUDLDownloader downloader;
+    private final DownloadSource source;
+    private final String name;
+    private final Path outputDir;
+    // 按哈希索引尚未收到的文件；内容相同的多个文件（如多个空文件）共用一个条目
+    private final Map<String, List<QUDLDownloader.BundleItem>> pending = new LinkedHashMap<>();
+
+    BundleDownload(QUDLDownloader downloader, DownloadSource source, String name, Path outputDir,
+                   List<QUDLDownloader.BundleItem> items) {
+        this.downloader = downloader;
+        this.source = source;
+        this.name = name;
+        this.outputDir = outputDir;
+        for (QUDLDownloader.BundleItem item : items) {
+            String hash = item.listener().getExpectedHash(item.filename()).toLowerCase(Locale.ROOT);
+            pending.computeIfAbsent(hash, key -> new ArrayList<>()).add(item);
+        }
+    }
+
+    // 未能从打包中获得的文件，由调用方逐个下载
+    List<QUDLDownloader.BundleItem> remaining() {
+        List<QUDLDownloader.BundleItem> remaining = new ArrayList<>();
+        pending.values().forEach(remaining::addAll);
+        return remaining;
+    }
+
+    void run() throws IOException {
+        HttpResponse<InputStream> response = downloader.post(source, GSON.toJson(Map.of("hashes", pending.keySet())));
+        int responseCode = response.statusCode();
+        if (responseCode == 404 || responseCode == 405 || responseCode == 501) {
+            QUDLDownloader.discard(response);
+            throw new BundleNotSupportedException("服务器不支持打包下载: HTTP " + responseCode);
+        }
+        if (responseCode != 200) {
+            QUDLDownloader.discard(response);
+            throw new QUDLDownloader.HttpStatusException(responseCode);
+        }
+
+        try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(downloader.body(response, name), BUFFER_SIZE))) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String entryName = entry.getName();
+                String hash = entryName.substring(entryName.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+                List<QUDLDownloader.BundleItem> items = pending.get(hash);
+                // 未请求的条目由 getNextEntry 跳过
+                if (items != null && !entry.isDirectory() && extract(zip, items.get(0), buffer)) {
+                    pending.remove(hash);
+                    copyDuplicates(hash, items);
+                }
+            }
+        }
+    }
+
+    // 写入 .part 文件并校验，通过后替换目标文件；校验失败的文件留给逐个下载
+    private boolean extract(InputStream in, QUDLDownloader.BundleItem item, byte[] buffer) throws IOException {
+        String filename = item.filename();
+        QUDLDownloader.ProgressListener listener = item.listener();
+        long size = listener.getExpectedSize(filename);
+        Path target = outputDir.resolve(filename);
+        PartFile part = new PartFile(target);
+        part.load(listener.getExpectedHash(filename), size);
+        part.reset();
+        listener.onStartDownload(filename);
+
+        long verifyStart;
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        long written = 0;
+        try (OutputStream out = Files.newOutputStream(part.data())) {
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                written += bytesRead;
+                if (size >= 0 && written > size) {
+                    break;
+                }
+                out.write(buffer, 0, bytesRead);
+                digest.update(buffer, 0, bytesRead);
+                listener.onProgress(filename, written, size);
+            }
+            verifyStart = downloader.metrics().start();
+        }
+
+        boolean valid = (size < 0 || written == size) && Hex.encodeHexString(digest.digest()).equalsIgnoreCase(part.state().sha256);
+        downloader.metrics().record(Metrics.VERIFY, verifyStart);
+        if (!valid) {
+            LOGGER.warn("[QUDL] 打包中的文件校验失败，改为单独下载: {}", filename);
+            part.delete();
+            return false;
+        }
+        try {
+            part.commit(target);
+        } catch (IOException e) {
+            // 保留已校验的数据，逐个下载时从完整的 .part 直接替换
+            LOGGER.warn("[QUDL] 替换文件失败，改为单独处理: {} - {}", filename, e.getMessage());
+            part.advance(written);
+            part.saveQuietly();
+            return false;
+        }
+        downloader.metrics().file(filename).finished("ok", null);
+        listener.onComplete(filename);
+        return true;
+    }
+
+    // 同一哈希的其余文件从已校验的第一个文件复制；复制失败的留给逐个下载
+    private void copyDuplicates(String hash, List<QUDLDownloader.BundleItem> items) {
+        Path source = outputDir.resolve(items.get(0).filename());
+        for (QUDLDownloader.BundleItem item : items.subList(1, items.size())) {
+            String filename = item.filename();
+            QUDLDownloader.ProgressListener listener = item.listener();
+            Path target = outputDir.resolve(filename);
+            PartFile part = new PartFile(target);
+            try {
+                part.load(listener.getExpectedHash(filename), listener.getExpectedSize(filename));
+                part.reset();
+                listener.onStartDownload(filename);
+                Files.copy(source, part.data(), StandardCopyOption.REPLACE_EXISTING);
+                part.commit(target);
+            } catch (IOException e) {
+                LOGGER.warn("[QUDL] 复制相同内容的文件失败，改为单独下载: {}", filename);
+                part.delete();
+                pending.computeIfAbsent(hash, key -> new ArrayList<>()).add(item);
+                continue;
+            }
+            downloader.metrics().file(filename).finished("ok", null);
+            listener.onComplete(filename);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.qudl.network;
+
+import com.qudl.util.FastCDC;
+import com.qudl.util.HashUtils;
+import com.qudl.util.Metrics;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 分块增量更新：用本地旧文件中相同内容的块重建新文件，只下载缺失的块
+class ChunkedDownload {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    // 相邻缺失区间间隔小于该值时合并为一次请求
+    private static final long MAX_GAP = 64 * 1024;
+    // 可复用内容低于该比例时直接完整下载
+    private static final int MIN_REUSE_PERCENT = 10;
+
+    private final QUDLDownloader downloader;
+    private final DownloadSource remote;
+    private final String filename;
+    private final Path source;
+    private final PartFile part;
+    private final FastCDC.Layout layout;
+    private final QUDLDownloader.ProgressListener listener;
+    private long done;
+
+    ChunkedDownload(QUDLDownloader downloader, DownloadSource remote, String filename, Path source,
+                    PartFile part, FastCDC.Layout layout, QUDLDownloader.ProgressListener listener) {
+        this.downloader = downloader;
+        this.remote = remote;
+        this.filename = filename;
+        this.source = source;
+        this.part = part;
+        this.layout = layout;
+        this.listener = listener;
+    }
+
+    // 返回 false 表示本地可复用内容太少，由调用方完整下载
+    boolean run() throws IOException {
+        PartFile.State state = part.state();
+        Map<String, FastCDC.Chunk> available = new HashMap<>();
+        for (FastCDC.Chunk chunk : FastCDC.chunk(source, layout.params())) {
+            available.putIfAbsent(chunk.hash(), chunk);
+        }
+
+        long reusable = 0;
+        for (FastCDC.Chunk chunk : layout.chunks()) {
+            FastCDC.Chunk local = available.get(chunk.hash());
+            if (local != null && local.length() == chunk.length()) {
+                reusable += chunk.length();
+            }
+        }
+        if (reusable * 100 < state.size * MIN_REUSE_PERCENT) {
+            return false;
+        }
+
+        part.reset();
+        List<long[]> missing = new ArrayList<>();
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(part.data(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            out.write(ByteBuffer.wrap(new byte[1]), state.size - 1);
+
+            for (FastCDC.Chunk chunk : layout.chunks()) {
+                FastCDC.Chunk local = available.get(chunk.hash());
+                if (local != null && local.length() == chunk.length()) {
+                    copy(in, local.offset(), out, chunk.offset(), chunk.length());
+                    progress(chunk.length());
+                } else {
+                    addMissing(missing, chunk.offset(), chunk.offset() + chunk.length());
+                }
+            }
+
+            for (long[] range : missing) {
+                fetch(range[0], range[1], out);
+            }
+            out.force(false);
+        }
+
+        long verifyStart = downloader.metrics().start();
+        String actual = HashUtils.calculateSHA256(part.data());
+        downloader.metrics().record(Metrics.VERIFY, verifyStart);
+        if (!actual.equalsIgnoreCase(state.sha256)) {
+            part.reset();
+            throw new QUDLDownloader.FileException("文件哈希校验失败: " + filename);
+        }
+        part.markVerified();
+        return true;
+    }
+
+    static void addMissing(List<long[]> missing, long start, long end) {
+        if (!missing.isEmpty()) {
+            long[] last = missing.get(missing.size() - 1);
+            if (start - last[1] <= MAX_GAP) {
+                last[1] = end;
+                return;
+            }
+        }
+        missing.add(new long[]{start, end});
+    }
+
+    private void copy(FileChannel in, long from, FileChannel out, long to, long length) throws IOException {
+        in.position(from);
+        long copied = 0;
+        while (copied < length) {
+            long count = out.transferFrom(in, to + copied, length - copied);
+            if (count <= 0) {
+                throw new QUDLDownloader.FileException("读取本地文件失败: " + source.getFileName());
+            }
+            copied += count;
+        }
+    }
+
+    private void fetch(long start, long end, FileChannel out) throws IOException {
+        HttpResponse<InputStream> response = downloader.send(remote, "bytes=" + start + "-" + (end - 1), null);
+        if (response.statusCode() != 206
+                || !QUDLDownloader.isExpectedRange(response.headers().firstValue("Content-Range").orElse(null), start)) {
+            QUDLDownloader.discard(response);
+            throw new SegmentedDownload.RangeNotSupportedException("服务器不支持分块下载: " + filename);
+        }
+
+        try (InputStream body = downloader.body(response, filename)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long position = start;
+            int bytesRead;
+            while (position < end && (bytesRead = body.read(buffer, 0, (int) Math.min(buffer.length, end - position))) != -1) {
+                ByteBuffer view = ByteBuffer.wrap(buffer, 0, bytesRead);
+                while (view.hasRemaining()) {
+                    position += out.write(view, position);
+                }
+                progress(bytesRead);
+            }
+            if (position != end) {
+                throw new IOException("分块不完整: " + filename);
+            }
+        }
+    }
+
+    private void progress(long bytes) {
+        done += bytes;
+        listener.onProgress(filename, done, part.state().size);
+    }
+}
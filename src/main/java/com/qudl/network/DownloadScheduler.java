@@ -0,0 +1,116 @@
+package com.qudl.network;
+
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 文件级下载队列：必需文件优先，其余按策略排序；排序只作用于等待中的任务
+// 等待中的任务数有上限，队列满时提交方（解析 manifest 和校验的线程）暂停，避免大量任务堆积在内存中
+class DownloadScheduler {
+    private static final int MAX_QUEUED = 256;
+    // 下载线程自身提交的任务（如打包失败后逐个下载）不受上限约束，否则所有线程可能互相等待
+    private static final ThreadLocal<Boolean> WORKER = ThreadLocal.withInitial(() -> false);
+
+    enum Policy {
+        // 大文件先开始，缩短整体完成时间
+        LARGEST_FIRST,
+        // 小文件先完成，界面进度更快推进
+        SHORTEST_FIRST,
+        // 保持 manifest 顺序
+        MANIFEST;
+
+        static Policy parse(String value) {
+            if (value == null) {
+                return LARGEST_FIRST;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return LARGEST_FIRST;
+            }
+        }
+    }
+
+    private record Job(Runnable task, boolean required, long size, long sequence) implements Runnable {
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Semaphore queued = new Semaphore(MAX_QUEUED);
+
+    DownloadScheduler(int threads, Policy policy, int priority) {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(16, comparator(policy)),
+                r -> {
+                    Thread thread = new Thread(() -> {
+                        WORKER.set(true);
+                        r.run();
+                    }, "QUDL-Download-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(priority);
+                    return thread;
+                });
+        // 线程预先启动，保证任务都经过优先队列
+        executor.prestartAllCoreThreads();
+    }
+
+    // 队列已满时阻塞到有任务开始执行；被中断时不再等待，直接加入队列
+    void submit(Runnable task, boolean required, long size) {
+        Runnable job = task;
+        if (!WORKER.get()) {
+            try {
+                queued.acquire();
+                job = () -> {
+                    queued.release();
+                    task.run();
+                };
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        executor.execute(new Job(job, required, size, sequence.getAndIncrement()));
+    }
+
+    // 运行中调整同时执行的任务数；减少时正在下载的文件继续完成，多余线程在空闲后退出
+    synchronized void setConcurrency(int threads) {
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+            executor.prestartAllCoreThreads();
+        } else {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+    }
+
+    // 正在执行和排队中的任务数
+    int demand() {
+        return executor.getActiveCount() + executor.getQueue().size();
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private static Comparator<Runnable> comparator(Policy policy) {
+        Comparator<Job> order = Comparator.comparing(job -> !job.required());
+        order = switch (policy) {
+            case LARGEST_FIRST -> order.thenComparing(Job::size, Comparator.reverseOrder());
+            // 大小未知的文件排在最后
+            case SHORTEST_FIRST -> order.thenComparingLong(job -> job.size() < 0 ? Long.MAX_VALUE : job.size());
+            case MANIFEST -> order;
+        };
+        Comparator<Job> result = order.thenComparingLong(Job::sequence);
+        return (a, b) -> result.compare((Job) a, (Job) b);
+    }
+}
@@ -0,0 +1,53 @@
+package com.qudl.network;
+
+import java.io.IOException;
+
+// 一个文件的下载来源：镜像组、相对路径和本次尝试使用的镜像
+class DownloadSource {
+    private final MirrorSet mirrors;
+    private final String path;
+    private final long size;
+    // 本次尝试最初选择的镜像，续传校验值（ETag / Last-Modified）只对它有效
+    private volatile MirrorSet.Mirror origin;
+    // 对冲请求胜出后，后续请求改用更快的镜像
+    private volatile MirrorSet.Mirror mirror;
+
+    DownloadSource(MirrorSet mirrors, String path, long size) {
+        this.mirrors = mirrors;
+        this.path = path;
+        this.size = size;
+    }
+
+    // 所有镜像都熔断时抛出 CircuitOpenException，此时 mirror() 为 null
+    MirrorSet.Mirror select(MirrorSet.Mirror exclude) throws IOException {
+        origin = null;
+        mirror = null;
+        origin = mirrors.acquire(size, exclude);
+        mirror = origin;
+        return origin;
+    }
+
+    MirrorSet mirrors() {
+        return mirrors;
+    }
+
+    String path() {
+        return path;
+    }
+
+    long size() {
+        return size;
+    }
+
+    MirrorSet.Mirror origin() {
+        return origin;
+    }
+
+    MirrorSet.Mirror mirror() {
+        return mirror;
+    }
+
+    void use(MirrorSet.Mirror mirror) {
+        this.mirror = mirror;
+    }
+}
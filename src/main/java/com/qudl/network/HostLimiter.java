@@ -0,0 +1,79 @@
+package com.qudl.network;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 限制同一主机的并发连接数（含分段和分块请求），响应流关闭时归还
+class HostLimiter {
+    private final int maxPerHost;
+    private final Map<String, Semaphore> hosts = new ConcurrentHashMap<>();
+
+    HostLimiter(int maxPerHost) {
+        this.maxPerHost = maxPerHost;
+    }
+
+    Permit acquire(URI uri) throws InterruptedIOException {
+        if (maxPerHost <= 0) {
+            return new Permit(null);
+        }
+        Semaphore semaphore = semaphore(uri);
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("下载被中断");
+        }
+        return new Permit(semaphore);
+    }
+
+    // 对冲请求不等待名额，目标主机已满时返回 null
+    Permit tryAcquire(URI uri) {
+        if (maxPerHost <= 0) {
+            return new Permit(null);
+        }
+        Semaphore semaphore = semaphore(uri);
+        return semaphore.tryAcquire() ? new Permit(semaphore) : null;
+    }
+
+    private Semaphore semaphore(URI uri) {
+        String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+        return hosts.computeIfAbsent(host + ":" + uri.getPort(), key -> new Semaphore(maxPerHost));
+    }
+
+    static class Permit {
+        private final Semaphore semaphore;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Semaphore semaphore) {
+            this.semaphore = semaphore;
+        }
+
+        void release() {
+            if (semaphore != null && released.compareAndSet(false, true)) {
+                semaphore.release();
+            }
+        }
+
+        // 响应体关闭（读完、出错或被丢弃）时释放连接名额
+        InputStream bind(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        release();
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package com.qudl.network;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.qudl.config.QUDLConfig;
+import com.qudl.util.FileUtils;
+import com.qudl.util.QUDLLog;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// 一组内容相同的镜像：记录延迟和吞吐，为每个文件选择预计最快的镜像；连续失败的镜像熔断一段时间
+public class MirrorSet {
+    private static final Logger LOGGER = QUDLLog.LOGGER;
+    private static final Gson GSON = new Gson();
+    // 计算对冲阈值使用的最近首字节耗时样本数
+    private static final int TTFB_SAMPLES = 256;
+    private static final int MIN_TTFB_SAMPLES = 20;
+    // 没有吞吐数据时假定的速度
+    private static final double DEFAULT_THROUGHPUT = 1024 * 1024;
+
+    public static class Mirror {
+        private final String baseUrl;
+        // 以下为指数加权平均
+        private double rttMillis = -1;
+        private double throughput = -1;
+        private int failures;
+        private long openUntil;
+
+        private Mirror(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        public String baseUrl() {
+            return baseUrl;
+        }
+
+        public String resolve(String path) {
+            if (path.isEmpty()) {
+                return baseUrl;
+            }
+            return (baseUrl.endsWith("/") ? baseUrl : baseUrl + "/") + path;
+        }
+
+        public String host() {
+            return URI.create(baseUrl).getHost();
+        }
+
+        // 预计下载 size 字节需要的时间（毫秒）
+        private synchronized double estimate(long size) {
+            double rtt = rttMillis < 0 ? 200 : rttMillis;
+            double speed = throughput > 0 ? throughput : DEFAULT_THROUGHPUT;
+            return rtt + Math.max(0, size) * 1000.0 / speed;
+        }
+
+        private synchronized boolean isOpen(long now) {
+            return openUntil > now;
+        }
+
+        private synchronized long openUntil() {
+            return openUntil;
+        }
+    }
+
+    // 所有镜像都处于熔断中，retryAfter 为最早恢复前的毫秒数
+    public static class CircuitOpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final long retryAfter;
+
+        CircuitOpenException(long retryAfter) {
+            super("所有服务器暂时不可用");
+            this.retryAfter = retryAfter;
+        }
+
+        public long retryAfter() {
+            return retryAfter;
+        }
+    }
+
+    // 持久化的镜像历史数据，下次启动时作为初始估计
+    private static class History {
+        public double rtt_ms;
+        public double throughput_bps;
+    }
+
+    private final List<Mirror> mirrors;
+    private final int failureThreshold;
+    private final long baseBackoff;
+    private final long maxBackoff;
+    private final int hedgePercentile;
+    private final long hedgeMinMillis;
+    private final long[] ttfb = new long[TTFB_SAMPLES];
+    private int ttfbCount;
+
+    public MirrorSet(List<String> baseUrls, QUDLConfig.DownloadConfig config) {
+        Set<String> unique = new LinkedHashSet<>();
+        for (String url : baseUrls) {
+            if (url != null && !url.isBlank()) {
+                unique.add(url.trim());
+            }
+        }
+        if (unique.isEmpty()) {
+            throw new IllegalArgumentException("至少需要一个服务器地址");
+        }
+        this.mirrors = unique.stream().map(Mirror::new).toList();
+        this.failureThreshold = Math.max(1, config.circuit_failures);
+        this.baseBackoff = config.circuit_backoff_ms;
+        this.maxBackoff = Math.max(config.circuit_backoff_ms, config.circuit_max_backoff_ms);
+        this.hedgePercentile = config.hedge_percentile;
+        this.hedgeMinMillis = config.hedge_min_ms;
+    }
+
+    // 配置中的主地址在前，镜像按配置顺序在后
+    public static MirrorSet of(String primary, List<String> mirrors, QUDLConfig.DownloadConfig config) {
+        List<String> urls = new ArrayList<>();
+        urls.add(primary);
+        if (mirrors != null) {
+            urls.addAll(mirrors);
+        }
+        return new MirrorSet(urls, config);
+    }
+
+    public List<Mirror> mirrors() {
+        return mirrors;
+    }
+
+    public Mirror primary() {
+        return mirrors.get(0);
+    }
+
+    // 未熔断的镜像按预计耗时排序；全部熔断时按恢复时间排序
+    public List<Mirror> ranked(long size) {
+        long now = System.currentTimeMillis();
+        List<Mirror> available = new ArrayList<>();
+        for (Mirror mirror : mirrors) {
+            if (!mirror.isOpen(now)) {
+                available.add(mirror);
+            }
+        }
+        if (available.isEmpty()) {
+            available.addAll(mirrors);
+            available.sort(Comparator.comparingLong(Mirror::openUntil));
+            return available;
+        }
+        // 预计耗时相同时保持配置顺序
+        available.sort(Comparator.comparingDouble(mirror -> mirror.estimate(size)));
+        return available;
+    }
+
+    // 选择镜像，exclude 为上次失败的镜像；所有镜像都熔断时立即失败，由调用方的重试循环等待恢复，不占用下载线程
+    public Mirror acquire(long size, Mirror exclude) throws CircuitOpenException {
+        List<Mirror> ranked = ranked(size);
+        Mirror chosen = ranked.get(0);
+        if (chosen == exclude && ranked.size() > 1 && !ranked.get(1).isOpen(System.currentTimeMillis())) {
+            chosen = ranked.get(1);
+        }
+        long wait = chosen.openUntil() - System.currentTimeMillis();
+        if (wait > 0) {
+            LOGGER.debug("[QUDL] 所有服务器暂不可用，{} 毫秒后恢复", wait);
+            throw new CircuitOpenException(wait);
+        }
+        return chosen;
+    }
+
+    // 可用于对冲请求的备用镜像
+    public Mirror alternate(Mirror current, long size) {
+        long now = System.currentTimeMillis();
+        for (Mirror mirror : ranked(size)) {
+            if (mirror != current && !mirror.isOpen(now)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    // 首字节耗时，同时作为 RTT 估计
+    public void recordTtfb(Mirror mirror, long nanos) {
+        double millis = nanos / 1e6;
+        synchronized (mirror) {
+            mirror.rttMillis = mirror.rttMillis < 0 ? millis : mirror.rttMillis * 0.8 + millis * 0.2;
+        }
+        synchronized (ttfb) {
+            ttfb[ttfbCount++ % TTFB_SAMPLES] = nanos;
+        }
+    }
+
+    public void recordSuccess(Mirror mirror, long bytes, long nanos) {
+        synchronized (mirror) {
+            mirror.failures = 0;
+            mirror.openUntil = 0;
+            // 太小的传输主要由延迟决定，不用于估计吞吐
+            if (bytes >= 256 * 1024 && nanos > 0) {
+                double speed = bytes * 1e9 / nanos;
+                mirror.throughput = mirror.throughput < 0 ? speed : mirror.throughput * 0.7 + speed * 0.3;
+            }
+        }
+    }
+
+    // 只有连接错误和 5xx 计入熔断；单个文件的 404、校验失败等不说明服务器不可用
+    public void recordFailure(Mirror mirror, Throwable error) {
+        if (isServerFailure(error)) {
+            recordFailure(mirror);
+        }
+    }
+
+    // 只有一个服务器时不熔断，没有可以切换的镜像，熔断只会让所有文件一起等待
+    public void recordFailure(Mirror mirror) {
+        if (mirrors.size() < 2) {
+            return;
+        }
+        long backoff;
+        synchronized (mirror) {
+            mirror.failures++;
+            if (mirror.failures < failureThreshold) {
+                return;
+            }
+            // 指数退避加随机抖动，避免所有客户端同时重试
+            int exponent = Math.min(20, mirror.failures - failureThreshold);
+            long ceiling = Math.min(maxBackoff, baseBackoff << exponent);
+            backoff = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+            mirror.openUntil = System.currentTimeMillis() + backoff;
+        }
+        LOGGER.warn("[QUDL] 服务器连续失败，暂停使用 {} 秒: {}", backoff / 1000, mirror.baseUrl);
+    }
+
+    static boolean isServerFailure(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof QUDLDownloader.HttpStatusException status) {
+                return status.status() >= 500;
+            }
+            if (e instanceof QUDLDownloader.FileException
+                    || e instanceof CircuitOpenException
+                    || e instanceof SegmentedDownload.RangeNotSupportedException
+                    || e instanceof BundleDownload.BundleNotSupportedException) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 首字节等待超过该时间时向备用镜像发出对冲请求；返回 -1 表示不对冲
+    public long hedgeDelayMillis() {
+        if (hedgePercentile <= 0 || mirrors.size() < 2) {
+            return -1;
+        }
+        long[] samples;
+        synchronized (ttfb) {
+            samples = Arrays.copyOf(ttfb, Math.min(ttfbCount, TTFB_SAMPLES));
+        }
+        if (samples.length < MIN_TTFB_SAMPLES) {
+            // 样本不足时用较保守的固定值
+            return Math.max(hedgeMinMillis, 2000);
+        }
+        Arrays.sort(samples);
+        int index = Math.min(samples.length - 1, samples.length * Math.min(hedgePercentile, 100) / 100);
+        return Math.max(hedgeMinMillis, TimeUnit.NANOSECONDS.toMillis(samples[index]));
+    }
+
+    // 启动时并发探测所有镜像的延迟，只要有响应就视为可用
+    public void probe(HttpClient client, String path, long timeoutMillis) {
+        if (mirrors.size() < 2) {
+            return;
+        }
+        List<CompletableFuture<Void>> probes = new ArrayList<>();
+        for (Mirror mirror : mirrors) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(mirror.resolve(path)))
+                    .timeout(Duration.ofMillis(timeoutMillis))
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .build();
+            long start = System.nanoTime();
+            probes.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .handle((response, error) -> {
+                        if (error != null) {
+                            recordFailure(mirror);
+                        } else {
+                            recordTtfb(mirror, System.nanoTime() - start);
+                        }
+                        return null;
+                    }));
+        }
+        try {
+            CompletableFuture.allOf(probes.toArray(new CompletableFuture<?>[0])).get(timeoutMillis + 500, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ignored) {
+        }
+        LOGGER.info("[QUDL] 服务器探测完成，首选: {}", ranked(0).get(0).baseUrl);
+    }
+
+    public void restore(Path file) {
+        Map<String, History> history = readHistory(file);
+        for (Mirror mirror : mirrors) {
+            History entry = history.get(mirror.baseUrl);
+            if (entry != null) {
+                synchronized (mirror) {
+                    mirror.rttMillis = entry.rtt_ms > 0 ? entry.rtt_ms : -1;
+                    mirror.throughput = entry.throughput_bps > 0 ? entry.throughput_bps : -1;
+                }
+            }
+        }
+    }
+
+    public void persist(Path file) {
+        Map<String, History> history = readHistory(file);
+        for (Mirror mirror : mirrors) {
+            History entry = new History();
+            synchronized (mirror) {
+                entry.rtt_ms = mirror.rttMillis;
+                entry.throughput_bps = mirror.throughput;
+            }
+            history.put(mirror.baseUrl, entry);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Files.writeString(tmp, GSON.toJson(history));
+            FileUtils.moveAtomically(tmp, file);
+        } catch (IOException e) {
+            LOGGER.debug("[QUDL] 服务器统计保存失败: {}", e.getMessage());
+        }
+    }
+
+    private static Map<String, History> readHistory(Path file) {
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                Map<String, History> history = GSON.fromJson(reader, new TypeToken<Map<String, History>>() {}.getType());
+                if (history != null) {
+                    return new HashMap<>(history);
+                }
+            } catch (IOException | JsonParseException e) {
+                LOGGER.debug("[QUDL] 服务器统计损坏: {}", e.getMessage());
+            }
+        }
+        return new HashMap<>();
+    }
+}
@@ -0,0 +1,165 @@
+package com.qudl.network;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.qudl.util.FileUtils;
+import org.apache.commons.codec.digest.DigestUtils;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.List;
+
+// 未完成的下载：数据保存在 .part 文件，进度与校验信息保存在旁边的 .part.json
+public class PartFile {
+    private static final Gson GSON = new Gson();
+    private static final String PART_SUFFIX = ".part";
+    private static final String STATE_SUFFIX = ".part.json";
+
+    private final Path data;
+    private final Path sidecar;
+    private State state;
+    // 与 state.offset 对应的已下载部分摘要，仅在内存中跨重试复用
+    private MessageDigest digest;
+    // 完整数据已通过哈希校验，替换失败时重试只需再次移动
+    private boolean verified;
+
+    public static class State {
+        public String sha256;
+        public long size;
+        public long offset;
+        public String etag;
+        public String last_modified;
+        // 分段下载时尚未完成的区间 [start, end)
+        public List<long[]> segments;
+    }
+
+    public PartFile(Path target) {
+        this.data = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+        this.sidecar = target.resolveSibling(target.getFileName() + STATE_SUFFIX);
+    }
+
+    public Path data() {
+        return data;
+    }
+
+    public State state() {
+        return state;
+    }
+
+    // 读取上次会话留下的进度，文件被替换或期望哈希变化时丢弃
+    public State load(String expectedHash, long expectedSize) {
+        state = null;
+        digest = null;
+        verified = false;
+        if (Files.exists(sidecar) && Files.exists(data)) {
+            try (Reader reader = Files.newBufferedReader(sidecar)) {
+                State saved = GSON.fromJson(reader, State.class);
+                if (saved != null
+                        && expectedHash.equalsIgnoreCase(saved.sha256)
+                        && saved.size == expectedSize
+                        && saved.offset >= 0
+                        && saved.offset <= Files.size(data)
+                        && (saved.segments == null || saved.offset == 0)) {
+                    state = saved;
+                }
+            } catch (IOException | JsonParseException ignored) {
+            }
+        }
+        if (state == null) {
+            delete();
+            state = new State();
+            state.sha256 = expectedHash;
+            state.size = expectedSize;
+        }
+        return state;
+    }
+
+    public MessageDigest digest() throws IOException {
+        if (digest == null) {
+            digest = digestPrefix(state.offset);
+        }
+        return digest;
+    }
+
+    public boolean isVerified() {
+        return verified;
+    }
+
+    public void markVerified() {
+        verified = true;
+    }
+
+    public void advance(long bytes) {
+        state.offset += bytes;
+    }
+
+    // 服务器不支持续传或数据无效：从头开始
+    public void reset() {
+        delete();
+        state.offset = 0;
+        state.etag = null;
+        state.last_modified = null;
+        state.segments = null;
+        digest = DigestUtils.getSha256Digest();
+        verified = false;
+    }
+
+    public void save() throws IOException {
+        Path tmp = sidecar.resolveSibling(sidecar.getFileName() + ".tmp");
+        Files.writeString(tmp, GSON.toJson(state));
+        FileUtils.moveAtomically(tmp, sidecar);
+    }
+
+    public void saveQuietly() {
+        try {
+            save();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // 恢复时重新计算已下载部分的摘要
+    private MessageDigest digestPrefix(long length) throws IOException {
+        MessageDigest prefix = DigestUtils.getSha256Digest();
+        if (length == 0) {
+            return prefix;
+        }
+        try (FileChannel channel = FileChannel.open(data, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+            long remaining = length;
+            while (remaining > 0) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+                int read = channel.read(buffer);
+                if (read == -1) {
+                    throw new QUDLDownloader.FileException("未完成文件已损坏: " + data.getFileName());
+                }
+                buffer.flip();
+                prefix.update(buffer);
+                remaining -= read;
+            }
+        }
+        return prefix;
+    }
+
+    // 下载完成：原子替换目标文件并清理进度文件；失败是本地问题，与镜像无关
+    public void commit(Path target) throws IOException {
+        try {
+            FileUtils.moveAtomically(data, target);
+            Files.deleteIfExists(sidecar);
+        } catch (IOException e) {
+            throw new QUDLDownloader.FileException("替换文件失败: " + target.getFileName() + " - " + e.getMessage());
+        }
+    }
+
+    public void delete() {
+        try {
+            Files.deleteIfExists(data);
+            Files.deleteIfExists(sidecar);
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -1,14 +1,42 @@
 package com.qudl.network;
 
-import com.qudl.util.HashUtils;
+import com.qudl.config.QUDLConfig;
+import com.qudl.util.FastCDC;
+import com.qudl.util.Metrics;
+import com.qudl.util.QUDLLog;
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 public class QUDLDownloader {
     public interface ProgressListener {
@@ -17,58 +45,685 @@ public class QUDLDownloader {
         void onComplete(String filename);
         void onError(String filename, Exception e);
         String getExpectedHash(String filename);
+        long getExpectedSize(String filename);
+        FastCDC.Layout getChunkLayout(String filename);
     }
 
-    private final ExecutorService executor;
+    private static final Logger LOGGER = QUDLLog.LOGGER;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    // 每写入该字节数保存一次续传进度
+    private static final long CHECKPOINT_BYTES = 4L * 1024 * 1024;
+    // 重试间隔上限
+    private static final long MAX_RETRY_DELAY = 10_000;
+
+    // 打包下载中的一个文件，path 用于打包失败时单独下载
+    public record BundleItem(String path, String filename, boolean required, ProgressListener listener) {}
+
+    private record Attempt(MirrorSet.Mirror mirror, HttpResponse<InputStream> response) {}
+
+    // 服务器返回了错误状态码，只有 5xx 计入镜像熔断
+    public static class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        public HttpStatusException(int status) {
+            super("HTTP " + status);
+            this.status = status;
+        }
+
+        public int status() {
+            return status;
+        }
+    }
+
+    // 只与单个文件有关的错误（校验失败、续传范围不符、本地文件读取失败），不说明服务器不可用
+    static class FileException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        FileException(String message) {
+            super(message);
+        }
+    }
+
+    private final HttpClient client;
+    private final QUDLConfig.DownloadConfig config;
+    private final DownloadScheduler scheduler;
+    // 前台模式下自动调整并发文件数，未启用时为 null
+    private final AdaptiveConcurrency concurrency;
+    // 分段下载的额外连接，独立于文件级线程池避免互相等待
+    private final ExecutorService segmentExecutor;
     private final int maxRetries;
+    private final long segmentThreshold;
+    private final int maxSegments;
+    private final long readTimeout;
+    private final boolean deltaSync;
+    // 增量更新读取旧版本的目录，未设置时使用写入目录；后台模式写入暂存目录，旧文件仍在 mods 中
+    private volatile Path deltaDir;
+    private final HostLimiter hostLimiter;
+    private final RateLimiter rateLimiter;
+    private final Metrics metrics;
+    private final AtomicInteger bundles = new AtomicInteger();
+    // 服务器不支持打包时本次会话不再尝试
+    private volatile boolean bundleUnsupported;
+    // 取消时中止的响应流和尚未收到响应头的请求
+    private final Set<TimeoutInputStream> openBodies = ConcurrentHashMap.newKeySet();
+    private final Set<CompletableFuture<Attempt>> pendingRequests = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch cancelled = new CountDownLatch(1);
 
-    public QUDLDownloader(int threads, int maxRetries) {
-        this.executor = Executors.newFixedThreadPool(threads);
-        this.maxRetries = maxRetries;
+    public QUDLDownloader(HttpClient client, QUDLConfig.DownloadConfig config) {
+        this(client, config, false, new Metrics());
     }
 
-    public void downloadFile(String url, String filename, Path outputDir, ProgressListener listener) {
-        executor.submit(() -> {
-            int retryCount = 0;
-            while (retryCount <= maxRetries) {
-                try {
-                    listener.onStartDownload(filename);
+    // background 为 true 时以低优先级、较少连接运行，避免影响游戏中的网络和帧率
+    public QUDLDownloader(HttpClient client, QUDLConfig.DownloadConfig config, boolean background, Metrics metrics) {
+        this.client = client;
+        this.config = config;
+        this.metrics = metrics;
+        int priority = background ? Thread.MIN_PRIORITY : Thread.NORM_PRIORITY;
+        // 后台模式保持固定的少量连接
+        if (config.adaptive_threads && !background) {
+            // 文件数超过单个服务器的连接上限时只会在 HostLimiter 中排队
+            int max = config.max_connections_per_host > 0
+                    ? Math.min(config.max_threads, config.max_connections_per_host)
+                    : config.max_threads;
+            this.concurrency = new AdaptiveConcurrency(config.threads, config.min_threads, max,
+                    this::applyConcurrency, metrics.networkBytes()::sum, this::demand);
+        } else {
+            this.concurrency = null;
+        }
+        this.scheduler = new DownloadScheduler(
+                background ? Math.max(1, Math.min(config.threads, config.background_threads))
+                        : concurrency != null ? concurrency.initial() : config.threads,
+                DownloadScheduler.Policy.parse(config.schedule),
+                priority);
+        AtomicInteger counter = new AtomicInteger();
+        this.segmentExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "QUDL-Segment-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        });
+        this.maxRetries = config.retries;
+        this.segmentThreshold = config.segment_threshold_mb * 1024L * 1024L;
+        // 后台模式不分段，每个文件只占一个连接
+        this.maxSegments = background ? 1 : config.max_segments;
+        this.readTimeout = config.read_timeout_ms;
+        this.deltaSync = config.delta_sync;
+        this.hostLimiter = new HostLimiter(config.max_connections_per_host);
+        this.rateLimiter = new RateLimiter((background && config.background_bandwidth_limit_kbps > 0
+                ? config.background_bandwidth_limit_kbps
+                : config.bandwidth_limit_kbps) * 1024L);
+    }
 
-                    HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
-                    conn.setConnectTimeout(15000);
-                    conn.setReadTimeout(30000);
-                    conn.setRequestMethod("GET");
+    // 运行中调整限速，对正在进行的下载立即生效；0 表示不限速
+    public void setBandwidthLimit(int kbps) {
+        rateLimiter.setRate(kbps * 1024L);
+    }
 
-                    try (InputStream in = conn.getInputStream();
-                         OutputStream out = Files.newOutputStream(outputDir.resolve(filename))) {
+    public void setDeltaSource(Path dir) {
+        this.deltaDir = dir;
+    }
 
-                        long totalSize = conn.getContentLengthLong();
-                        byte[] buffer = new byte[8192];
-                        long totalRead = 0;
-                        int bytesRead;
+    Metrics metrics() {
+        return metrics;
+    }
 
-                        while ((bytesRead = in.read(buffer)) != -1) {
-                            out.write(buffer, 0, bytesRead);
-                            totalRead += bytesRead;
-                            listener.onProgress(filename, totalRead, totalSize);
-                        }
+    public void shutdown() {
+        if (concurrency != null) {
+            concurrency.shutdown();
+        }
+        scheduler.shutdown();
+        segmentExecutor.shutdown();
+    }
 
-                        // 哈希校验
-                        if (HashUtils.validateSHA256(outputDir.resolve(filename), listener.getExpectedHash(filename))) {
-                            Files.deleteIfExists(outputDir.resolve(filename));
-                            throw new Exception("文件哈希校验失败: " + filename);
-                        }
+    // 并发调整记录，写入统计报告；未启用自动调整时返回 null
+    public Map<String, Object> concurrencyReport() {
+        return concurrency != null ? concurrency.report() : null;
+    }
+
+    private void applyConcurrency(int threads) {
+        scheduler.setConcurrency(threads);
+    }
+
+    private int demand() {
+        return scheduler.demand();
+    }
+
+    // 中止所有下载：断开连接，排队中的任务直接以取消结束，已下载部分保留用于续传
+    public void cancel() {
+        cancelled.countDown();
+        // 限速等待中的连接立即醒来，不必等到令牌补充
+        rateLimiter.cancel();
+        for (CompletableFuture<Attempt> request : pendingRequests) {
+            request.cancel(true);
+        }
+        for (TimeoutInputStream body : openBodies) {
+            body.abort();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled.getCount() == 0;
+    }
+
+    public void downloadFile(String url, String filename, Path outputDir, ProgressListener listener) {
+        downloadFile(new MirrorSet(List.of(url), config), "", filename, outputDir, false, listener);
+    }
+
+    // 从镜像组下载 path，每次尝试选择预计最快的镜像；required 为 true 的文件（如前置库）优先开始下载
+    public void downloadFile(MirrorSet mirrors, String path, String filename, Path outputDir,
+                             boolean required, ProgressListener listener) {
+        Metrics.FileStats stats = metrics.file(filename);
+        stats.queued(listener.getExpectedSize(filename));
+        long queuedAt = metrics.start();
+        scheduler.submit(() -> {
+            metrics.record(Metrics.QUEUE_WAIT, queuedAt);
+            if (isCancelled()) {
+                stats.finished("cancelled", null);
+                listener.onError(filename, new CancellationException("下载已取消"));
+                return;
+            }
+            stats.started();
+            Path target = outputDir.resolve(filename);
+            PartFile part = new PartFile(target);
+            part.load(listener.getExpectedHash(filename), listener.getExpectedSize(filename));
+            DownloadSource source = new DownloadSource(mirrors, path, part.state().size);
+
+            if (tryDeltaSync(source, filename, target, part, listener)) {
+                stats.finished("ok", null);
+                return;
+            }
 
-                        listener.onComplete(filename);
-                        return;
+            int retryCount = 0;
+            MirrorSet.Mirror failed = null;
+            while (retryCount <= maxRetries) {
+                long attemptStart = metrics.start();
+                long bytesBefore = stats.bytes().sum();
+                try {
+                    // 上次尝试已校验通过、只是替换失败时不再重新下载
+                    if (!part.isVerified()) {
+                        source.select(failed);
+                        listener.onStartDownload(filename);
+                        if (useSegments(part.state())) {
+                            stats.mode("segmented");
+                            transferSegmented(source, filename, part, listener);
+                        } else {
+                            stats.mode("full");
+                            transfer(source, filename, part, listener);
+                        }
+                        metrics.record(Metrics.TRANSFER, attemptStart);
+                        mirrors.recordSuccess(source.mirror(), stats.bytes().sum() - bytesBefore, System.nanoTime() - attemptStart);
                     }
+                    // 校验通过后再替换正式文件
+                    part.commit(target);
+                    stats.finished("ok", null);
+                    listener.onComplete(filename);
+                    return;
                 } catch (Exception e) {
-                    if (++retryCount > maxRetries) {
+                    metrics.record(Metrics.TRANSFER, attemptStart);
+                    MirrorSet.Mirror attempted = source.mirror();
+                    if (attempted != null) {
+                        failed = attempted;
+                        if (!isCancelled()) {
+                            mirrors.recordFailure(attempted, e);
+                        }
+                    }
+                    // 保留已下载部分，下次重试或下次启动时续传
+                    if (part.state().offset > 0) {
+                        part.saveQuietly();
+                    }
+                    if (isCancelled()) {
+                        stats.finished("cancelled", null);
+                        listener.onError(filename, new CancellationException("下载已取消"));
+                        break;
+                    }
+                    // 所有镜像熔断时等到最早恢复的一个，等待可被取消且不算一次重试
+                    boolean circuitOpen = e instanceof MirrorSet.CircuitOpenException;
+                    long minDelay = circuitOpen ? ((MirrorSet.CircuitOpenException) e).retryAfter() : 0;
+                    if (!circuitOpen) {
+                        retryCount++;
+                    }
+                    boolean retry = retryCount <= maxRetries && awaitRetry(Math.max(1, retryCount), minDelay);
+                    if (!retry && isCancelled()) {
+                        // 等待期间被取消，按取消结束而不是失败
+                        stats.finished("cancelled", null);
+                        listener.onError(filename, new CancellationException("下载已取消"));
+                        break;
+                    }
+                    if (!retry) {
+                        stats.finished("failed", e.getMessage());
                         listener.onError(filename, new Exception("下载失败（最大重试次数：" + maxRetries + "）: " + e.getMessage()));
                         break;
                     }
+                    if (!circuitOpen) {
+                        stats.retried();
+                    }
+                }
+            }
+        }, required, listener.getExpectedSize(filename));
+    }
+
+    // 通过一次请求下载多个小文件，打包中缺失或校验失败的文件退回单独下载
+    public void downloadBundle(MirrorSet mirrors, String path, List<BundleItem> items, Path outputDir) {
+        if (items.size() < 2 || bundleUnsupported) {
+            downloadEach(mirrors, items, outputDir);
+            return;
+        }
+
+        String name = "bundle-" + bundles.incrementAndGet();
+        long totalSize = 0;
+        boolean required = false;
+        for (BundleItem item : items) {
+            long size = item.listener().getExpectedSize(item.filename());
+            totalSize += Math.max(0, size);
+            required |= item.required();
+            Metrics.FileStats stats = metrics.file(item.filename());
+            stats.queued(size);
+            stats.mode("bundle");
+        }
+        Metrics.FileStats bundleStats = metrics.file(name);
+        bundleStats.queued(totalSize);
+        bundleStats.mode("bundle");
+        metrics.increment("bundle_requests");
+
+        long queuedAt = metrics.start();
+        long bundleSize = totalSize;
+        scheduler.submit(() -> {
+            metrics.record(Metrics.QUEUE_WAIT, queuedAt);
+            if (isCancelled()) {
+                bundleStats.finished("cancelled", null);
+                downloadEach(mirrors, items, outputDir);
+                return;
+            }
+            bundleStats.started();
+            for (BundleItem item : items) {
+                metrics.file(item.filename()).started();
+            }
+            DownloadSource source = new DownloadSource(mirrors, path, bundleSize);
+            BundleDownload bundle = new BundleDownload(this, source, name, outputDir, items);
+            long start = metrics.start();
+            try {
+                source.select(null);
+                bundle.run();
+                metrics.record(Metrics.TRANSFER, start);
+                mirrors.recordSuccess(source.mirror(), bundleStats.bytes().sum(), System.nanoTime() - start);
+                bundleStats.finished("ok", null);
+            } catch (BundleDownload.BundleNotSupportedException e) {
+                LOGGER.info("[QUDL] {}，改为逐个下载", e.getMessage());
+                bundleUnsupported = true;
+                bundleStats.finished("unsupported", e.getMessage());
+            } catch (IOException e) {
+                metrics.record(Metrics.TRANSFER, start);
+                LOGGER.warn("[QUDL] 打包下载失败，剩余文件改为逐个下载: {}", e.getMessage());
+                if (source.mirror() != null && !isCancelled()) {
+                    mirrors.recordFailure(source.mirror(), e);
                 }
+                bundleStats.finished("failed", e.getMessage());
+            }
+            downloadEach(mirrors, bundle.remaining(), outputDir);
+        }, required, totalSize);
+    }
+
+    private void downloadEach(MirrorSet mirrors, List<BundleItem> items, Path outputDir) {
+        for (BundleItem item : items) {
+            downloadFile(mirrors, item.path(), item.filename(), outputDir, item.required(), item.listener());
+        }
+    }
+
+    // 带随机抖动的指数退避，避免失败后立即重试；至少等待 minDelay 毫秒，被取消或中断时返回 false
+    private boolean awaitRetry(int retryCount, long minDelay) {
+        long ceiling = Math.min(MAX_RETRY_DELAY, 500L << Math.min(10, retryCount - 1));
+        long delay = Math.max(minDelay, ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1));
+        try {
+            return !cancelled.await(delay, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // 本地已有旧版本且 manifest 提供分块信息时，只下载变化的块；失败时退回完整下载
+    private boolean tryDeltaSync(DownloadSource source, String filename, Path target, PartFile part, ProgressListener listener) {
+        FastCDC.Layout layout = listener.getChunkLayout(filename);
+        PartFile.State state = part.state();
+        Path previous = deltaDir != null ? deltaDir.resolve(filename) : target;
+        if (!deltaSync || layout == null || state.size <= 0
+                || state.offset > 0 || state.segments != null || !Files.isRegularFile(previous)) {
+            return false;
+        }
+
+        long start = metrics.start();
+        try {
+            source.select(null);
+            listener.onStartDownload(filename);
+            metrics.file(filename).mode("delta");
+            if (!new ChunkedDownload(this, source, filename, previous, part, layout, listener).run()) {
+                return false;
             }
+            metrics.record(Metrics.TRANSFER, start);
+            part.commit(target);
+            listener.onComplete(filename);
+            return true;
+        } catch (IOException e) {
+            // 取消导致的中断不是镜像的问题
+            if (source.mirror() != null && !isCancelled()) {
+                source.mirrors().recordFailure(source.mirror(), e);
+            }
+            // 已校验的数据保留给重试循环，只重新替换
+            if (!part.isVerified()) {
+                part.reset();
+            }
+            return false;
+        }
+    }
+
+    private boolean useSegments(PartFile.State state) {
+        return state.segments != null
+                || (maxSegments > 1 && segmentThreshold > 0 && state.size >= segmentThreshold);
+    }
+
+    private void transferSegmented(DownloadSource source, String filename, PartFile part, ProgressListener listener) throws IOException {
+        try {
+            new SegmentedDownload(this, segmentExecutor, source, filename, part, listener).run(maxSegments);
+        } catch (SegmentedDownload.RangeNotSupportedException e) {
+            // 服务器不支持 Range，退回单连接下载
+            part.reset();
+            transfer(source, filename, part, listener);
+        }
+    }
+
+    // 向当前镜像发出请求；配置了镜像且首字节等待超过对冲阈值时，同时向备用镜像请求，先响应者胜出
+    HttpResponse<InputStream> send(DownloadSource source, String range, String validator) throws IOException {
+        MirrorSet.Mirror primary = source.mirror();
+        HostLimiter.Permit permit = hostLimiter.acquire(URI.create(primary.resolve(source.path())));
+        // 校验值只对获取它的镜像有效
+        CompletableFuture<Attempt> first = sendAsync(source, primary, range,
+                primary == source.origin() ? validator : null, permit);
+
+        long hedgeDelay = source.mirrors().hedgeDelayMillis();
+        MirrorSet.Mirror alternate = hedgeDelay >= 0 ? source.mirrors().alternate(primary, source.size()) : null;
+        HostLimiter.Permit hedgePermit = null;
+        if (alternate != null) {
+            Attempt attempt = await(first, hedgeDelay);
+            if (attempt != null) {
+                return attempt.response();
+            }
+            hedgePermit = hostLimiter.tryAcquire(URI.create(alternate.resolve(source.path())));
+        }
+        if (hedgePermit == null) {
+            return await(first, -1).response();
+        }
+
+        metrics.increment("hedged_requests");
+        CompletableFuture<Attempt> second = sendAsync(source, alternate, range, null, hedgePermit);
+        Attempt winner = await(race(first, second), -1);
+        if (winner.mirror() != primary) {
+            metrics.increment("hedge_wins");
+            source.use(winner.mirror());
+        }
+        return winner.response();
+    }
+
+    private CompletableFuture<Attempt> sendAsync(DownloadSource source, MirrorSet.Mirror mirror, String range,
+                                                 String validator, HostLimiter.Permit permit) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(mirror.resolve(source.path())))
+                .timeout(Duration.ofMillis(readTimeout))
+                .GET();
+        if (range != null) {
+            request.header("Range", range);
+            if (validator != null) {
+                request.header("If-Range", validator);
+            }
+        }
+
+        long start = metrics.start();
+        CompletableFuture<Attempt> result = new CompletableFuture<>();
+        pendingRequests.add(result);
+        // 响应体关闭时归还连接名额
+        CompletableFuture<HttpResponse<InputStream>> pending = client.sendAsync(request.build(),
+                info -> BodySubscribers.mapping(BodySubscribers.ofInputStream(), permit::bind));
+        pending.whenComplete((response, error) -> {
+            if (error != null) {
+                permit.release();
+                result.completeExceptionally(unwrap(error));
+                return;
+            }
+            // 从发出请求到收到响应头的耗时
+            metrics.record(Metrics.REQUEST, start);
+            if (concurrency != null) {
+                concurrency.onLatency(System.nanoTime() - start);
+            }
+            source.mirrors().recordTtfb(mirror, System.nanoTime() - start);
+            if (!result.complete(new Attempt(mirror, response))) {
+                // 请求已被取消或已有其他镜像胜出
+                discard(response);
+            }
+        });
+        result.whenComplete((attempt, error) -> {
+            pendingRequests.remove(result);
+            if (error instanceof CancellationException) {
+                pending.cancel(true);
+            }
+        });
+        if (isCancelled()) {
+            result.cancel(true);
+        }
+        return result;
+    }
+
+    // 先成功响应的请求胜出，另一个被取消；5xx 只在另一个也失败时才返回
+    private static CompletableFuture<Attempt> race(CompletableFuture<Attempt> first, CompletableFuture<Attempt> second) {
+        CompletableFuture<Attempt> winner = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(2);
+        BiConsumer<Attempt, Throwable> handler = (attempt, error) -> {
+            int left = pending.decrementAndGet();
+            if (error == null && (attempt.response().statusCode() < 500 || left == 0) && winner.complete(attempt)) {
+                return;
+            }
+            if (error == null) {
+                discard(attempt.response());
+            }
+            if (left == 0) {
+                winner.completeExceptionally(error != null ? error : new HttpStatusException(attempt.response().statusCode()));
+            }
+        };
+        first.whenComplete(handler);
+        second.whenComplete(handler);
+        winner.whenComplete((attempt, error) -> {
+            first.cancel(true);
+            second.cancel(true);
         });
+        return winner;
+    }
+
+    // timeoutMillis 小于 0 时一直等待；超时返回 null
+    private static Attempt await(CompletableFuture<Attempt> future, long timeoutMillis) throws IOException {
+        try {
+            return timeoutMillis < 0 ? future.get() : future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("下载已取消");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("下载被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e.getCause());
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    // 打包请求不做对冲：响应体较大，重复请求的代价高于收益
+    HttpResponse<InputStream> post(DownloadSource source, String json) throws IOException {
+        URI uri = URI.create(source.mirror().resolve(source.path()));
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMillis(readTimeout))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        HostLimiter.Permit permit = hostLimiter.acquire(uri);
+        long start = metrics.start();
+        try {
+            HttpResponse<InputStream> response = client.send(request,
+                    info -> BodySubscribers.mapping(BodySubscribers.ofInputStream(), permit::bind));
+            metrics.record(Metrics.REQUEST, start);
+            source.mirrors().recordTtfb(source.mirror(), System.nanoTime() - start);
+            return response;
+        } catch (InterruptedException e) {
+            permit.release();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("下载被中断");
+        } catch (IOException e) {
+            permit.release();
+            throw e;
+        }
+    }
+
+    InputStream body(HttpResponse<InputStream> response, String filename) {
+        return new ThrottledInputStream(timedBody(response), rateLimiter, metrics.file(filename).bytes(), metrics.networkBytes());
+    }
+
+    // 带读取超时、取消时中止的响应体，不限速也不计入文件统计；用于 manifest 等非下载文件的请求
+    public InputStream timedBody(HttpResponse<InputStream> response) {
+        TimeoutInputStream body = new TimeoutInputStream(response.body(), readTimeout) {
+            @Override
+            public void close() throws IOException {
+                openBodies.remove(this);
+                super.close();
+            }
+        };
+        openBodies.add(body);
+        if (isCancelled()) {
+            body.abort();
+        }
+        return body;
+    }
+
+    static void discard(HttpResponse<InputStream> response) {
+        try {
+            response.body().close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // 边接收边计算哈希，数据只写入磁盘一次；已有部分数据时使用 Range 续传
+    private void transfer(DownloadSource source, String filename, PartFile part, ProgressListener listener) throws IOException {
+        PartFile.State state = part.state();
+        long expectedSize = state.size;
+
+        // 上次已完整下载但未来得及替换
+        if (expectedSize > 0 && state.offset == expectedSize) {
+            if (Hex.encodeHexString(part.digest().digest()).equalsIgnoreCase(state.sha256)) {
+                return;
+            }
+            part.reset();
+        }
+
+        HttpResponse<InputStream> response = state.offset > 0
+                ? send(source, "bytes=" + state.offset + "-", rangeValidator(state))
+                : send(source, null, null);
+
+        int responseCode = response.statusCode();
+        if (responseCode == 416) {
+            discard(response);
+            part.reset();
+            throw new FileException("服务器拒绝续传范围: " + filename);
+        }
+        if (responseCode == 206) {
+            if (!isExpectedRange(response.headers().firstValue("Content-Range").orElse(null), state.offset)) {
+                discard(response);
+                part.reset();
+                throw new FileException("服务器返回的续传范围不匹配: " + filename);
+            }
+        } else if (responseCode == 200) {
+            // 服务器忽略 Range 或文件已变化，完整重新下载
+            if (state.offset > 0) {
+                part.reset();
+            }
+            state.etag = response.headers().firstValue("ETag").orElse(null);
+            state.last_modified = response.headers().firstValue("Last-Modified").orElse(null);
+        } else {
+            discard(response);
+            throw new HttpStatusException(responseCode);
+        }
+
+        try (InputStream in = body(response, filename);
+             FileChannel out = FileChannel.open(part.data(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+            long totalSize = expectedSize >= 0
+                    ? expectedSize
+                    : state.offset + response.headers().firstValueAsLong("Content-Length").orElse(-1);
+            if (state.offset == 0) {
+                out.truncate(0);
+                if (expectedSize > 0) {
+                    // 预分配目标大小，减少文件碎片
+                    out.write(ByteBuffer.wrap(new byte[1]), expectedSize - 1);
+                }
+            }
+
+            MessageDigest digest = part.digest();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            ByteBuffer view = ByteBuffer.wrap(buffer);
+            long lastCheckpoint = state.offset;
+            int bytesRead;
+
+            while ((bytesRead = in.read(buffer)) != -1) {
+                if (expectedSize >= 0 && state.offset + bytesRead > expectedSize) {
+                    part.reset();
+                    throw new FileException("文件大小超出预期: " + filename);
+                }
+                view.clear().limit(bytesRead);
+                long position = state.offset;
+                while (view.hasRemaining()) {
+                    position += out.write(view, position);
+                }
+                digest.update(buffer, 0, bytesRead);
+                part.advance(bytesRead);
+                listener.onProgress(filename, state.offset, totalSize);
+
+                if (state.offset - lastCheckpoint >= CHECKPOINT_BYTES) {
+                    part.save();
+                    lastCheckpoint = state.offset;
+                }
+            }
+
+            if (expectedSize >= 0 && state.offset != expectedSize) {
+                throw new IOException("文件不完整: " + filename + " (" + state.offset + "/" + expectedSize + ")");
+            }
+            if (out.size() != state.offset) {
+                out.truncate(state.offset);
+            }
+            // 哈希校验
+            if (!Hex.encodeHexString(digest.digest()).equalsIgnoreCase(state.sha256)) {
+                part.reset();
+                throw new FileException("文件哈希校验失败: " + filename);
+            }
+            out.force(false);
+        }
+        part.markVerified();
+    }
+
+    // If-Range 只接受强校验的 ETag，弱 ETag 时退回 Last-Modified
+    static String rangeValidator(PartFile.State state) {
+        if (state.etag != null && !state.etag.startsWith("W/")) {
+            return state.etag;
+        }
+        return state.last_modified;
+    }
+
+    static boolean isExpectedRange(String contentRange, long offset) {
+        return contentRange != null && contentRange.trim().startsWith("bytes " + offset + "-");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,16 @@
+package com.qudl.network;
+
+import com.qudl.config.QUDLConfig;
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+public class QUDLHttp {
+    // 所有更新会话共用一个客户端：服务器支持时走 HTTP/2 多路复用，否则复用 HTTP/1.1 长连接
+    public static HttpClient newClient(QUDLConfig.DownloadConfig config) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(config.connect_timeout_ms))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+}
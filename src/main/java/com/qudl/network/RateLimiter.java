@@ -0,0 +1,77 @@
+package com.qudl.network;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+// 全局令牌桶限速，所有下载连接共享；速率可在运行中调整，0 表示不限速
+public class RateLimiter {
+    private long bytesPerSecond;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private boolean cancelled;
+
+    public RateLimiter(long bytesPerSecond) {
+        setRate(bytesPerSecond);
+    }
+
+    public synchronized void setRate(long bytesPerSecond) {
+        refill();
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        tokens = Math.min(tokens, burst());
+    }
+
+    public synchronized long rate() {
+        return bytesPerSecond;
+    }
+
+    // 单次读取的上限，避免一次性占用过多令牌导致其他连接长时间等待
+    public synchronized int chunkSize(int len) {
+        if (bytesPerSecond <= 0) {
+            return len;
+        }
+        return (int) Math.max(1, Math.min(len, Math.max(16 * 1024, bytesPerSecond / 8)));
+    }
+
+    // 扣除已读取的字节数，令牌不足时等待补充；取消时提前唤醒
+    public synchronized void acquire(int bytes) throws InterruptedIOException {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        refill();
+        tokens -= bytes;
+        if (tokens >= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond);
+        try {
+            // 等待期间释放锁，其他连接可以继续扣除令牌
+            for (long wait = deadline - System.nanoTime(); wait > 0 && !cancelled; wait = deadline - System.nanoTime()) {
+                TimeUnit.NANOSECONDS.timedWait(this, wait);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("下载被中断");
+        }
+        if (cancelled) {
+            throw new InterruptedIOException("下载已取消");
+        }
+    }
+
+    // 会话取消时唤醒所有等待中的连接，之后的读取直接失败
+    public synchronized void cancel() {
+        cancelled = true;
+        notifyAll();
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (bytesPerSecond > 0) {
+            tokens = Math.min(burst(), tokens + (now - lastRefill) * (double) bytesPerSecond / TimeUnit.SECONDS.toNanos(1));
+        }
+        lastRefill = now;
+    }
+
+    private double burst() {
+        return bytesPerSecond;
+    }
+}
@@ -0,0 +1,312 @@
+package com.qudl.network;
+
+import com.qudl.util.HashUtils;
+import com.qudl.util.Metrics;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 大文件按字节区间并行下载，先完成的分段会接管最慢分段的剩余部分
+class SegmentedDownload {
+    // 服务器不支持 Range 时抛出，由调用方退回单连接下载
+    static class RangeNotSupportedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RangeNotSupportedException(String message) {
+            super(message);
+        }
+    }
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    // 剩余不足该大小的分段不再拆分
+    private static final long MIN_SPLIT = 1024 * 1024;
+    private static final long CHECKPOINT_BYTES = 4L * 1024 * 1024;
+
+    private static class Segment {
+        private long next;
+        private long end;
+        // 已写入磁盘的位置，只由持有该分段的线程更新
+        private volatile long written;
+
+        Segment(long start, long end) {
+            this.next = start;
+            this.end = end;
+            this.written = start;
+        }
+
+        // 预留本次可写入的区间，返回起始位置；分段已结束时返回 -1
+        synchronized long claim(int length, int[] allowed) {
+            allowed[0] = (int) Math.min(length, end - next);
+            if (allowed[0] <= 0) {
+                return -1;
+            }
+            long position = next;
+            next += allowed[0];
+            return position;
+        }
+
+        // 拆出后半部分交给空闲线程
+        synchronized Segment split() {
+            long remaining = end - next;
+            if (remaining < 2 * MIN_SPLIT) {
+                return null;
+            }
+            long mid = next + remaining / 2;
+            Segment tail = new Segment(mid, end);
+            end = mid;
+            return tail;
+        }
+
+        synchronized long remaining() {
+            return end - next;
+        }
+
+        synchronized long[] pending() {
+            return new long[]{written, end};
+        }
+    }
+
+    private final QUDLDownloader downloader;
+    private final Executor executor;
+    private final DownloadSource source;
+    private final String filename;
+    private final PartFile part;
+    private final QUDLDownloader.ProgressListener listener;
+    private final List<Segment> segments = new ArrayList<>();
+    private final AtomicLong downloaded = new AtomicLong();
+    private final AtomicLong sinceCheckpoint = new AtomicLong();
+
+    SegmentedDownload(QUDLDownloader downloader, Executor executor, DownloadSource source, String filename,
+                      PartFile part, QUDLDownloader.ProgressListener listener) {
+        this.downloader = downloader;
+        this.executor = executor;
+        this.source = source;
+        this.filename = filename;
+        this.part = part;
+        this.listener = listener;
+    }
+
+    void run(int maxSegments) throws IOException {
+        PartFile.State state = part.state();
+        if (state.segments == null) {
+            plan(state.size, maxSegments);
+        } else {
+            long remaining = 0;
+            for (long[] range : state.segments) {
+                if (range[1] > range[0]) {
+                    segments.add(new Segment(range[0], range[1]));
+                    remaining += range[1] - range[0];
+                }
+            }
+            downloaded.set(state.size - remaining);
+        }
+
+        try (FileChannel out = FileChannel.open(part.data(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (state.segments == null) {
+                out.truncate(0);
+                // 预分配完整大小，各分段按位置写入
+                out.write(ByteBuffer.wrap(new byte[1]), state.size - 1);
+                state.segments = new ArrayList<>();
+                checkpoint();
+            }
+
+            if (!segments.isEmpty()) {
+                // 先用第一个分段确认服务器支持 Range
+                Segment first = segments.get(0);
+                HttpResponse<InputStream> probe = open(first);
+
+                List<CompletableFuture<Void>> workers = new ArrayList<>();
+                for (Segment segment : new ArrayList<>(segments.subList(1, segments.size()))) {
+                    workers.add(CompletableFuture.runAsync(() -> work(segment, null, out), executor));
+                }
+                CompletableFuture<Void> own = new CompletableFuture<>();
+                try {
+                    work(first, probe, out);
+                    own.complete(null);
+                } catch (RuntimeException e) {
+                    own.completeExceptionally(e);
+                }
+                workers.add(own);
+
+                // 等待全部分段结束后再关闭文件，保留第一个错误
+                IOException failure = null;
+                for (CompletableFuture<Void> worker : workers) {
+                    try {
+                        await(worker);
+                    } catch (IOException e) {
+                        if (failure == null) {
+                            failure = e;
+                        }
+                    }
+                }
+                checkpoint();
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+            out.force(false);
+        }
+
+        // 分段乱序写入，最后统一校验一次
+        long verifyStart = downloader.metrics().start();
+        String actual = HashUtils.calculateSHA256(part.data());
+        downloader.metrics().record(Metrics.VERIFY, verifyStart);
+        if (!actual.equalsIgnoreCase(state.sha256)) {
+            part.reset();
+            throw new QUDLDownloader.FileException("文件哈希校验失败: " + filename);
+        }
+        part.markVerified();
+    }
+
+    private void plan(long size, int maxSegments) {
+        int count = (int) Math.max(1, Math.min(maxSegments, size / MIN_SPLIT));
+        long step = size / count;
+        for (int i = 0; i < count; i++) {
+            long start = i * step;
+            long end = i == count - 1 ? size : start + step;
+            segments.add(new Segment(start, end));
+        }
+    }
+
+    private void work(Segment segment, HttpResponse<InputStream> response, FileChannel out) {
+        try {
+            while (segment != null) {
+                fetch(segment, response != null ? response : open(segment), out);
+                response = null;
+                segment = steal();
+            }
+        } catch (IOException e) {
+            throw new SegmentFailure(e);
+        }
+    }
+
+    private HttpResponse<InputStream> open(Segment segment) throws IOException {
+        long[] range = segment.pending();
+        HttpResponse<InputStream> response = downloader.send(source,
+                "bytes=" + range[0] + "-" + (range[1] - 1),
+                QUDLDownloader.rangeValidator(part.state()));
+
+        int responseCode = response.statusCode();
+        if (responseCode == 200) {
+            QUDLDownloader.discard(response);
+            throw new RangeNotSupportedException("服务器不支持分段下载: " + filename);
+        }
+        if (responseCode != 206) {
+            QUDLDownloader.discard(response);
+            throw new QUDLDownloader.HttpStatusException(responseCode);
+        }
+        if (!QUDLDownloader.isExpectedRange(response.headers().firstValue("Content-Range").orElse(null), range[0])) {
+            QUDLDownloader.discard(response);
+            throw new RangeNotSupportedException("服务器返回的分段范围不匹配: " + filename);
+        }
+        PartFile.State state = part.state();
+        if (state.etag == null && state.last_modified == null) {
+            state.etag = response.headers().firstValue("ETag").orElse(null);
+            state.last_modified = response.headers().firstValue("Last-Modified").orElse(null);
+        }
+        return response;
+    }
+
+    private void fetch(Segment segment, HttpResponse<InputStream> response, FileChannel out) throws IOException {
+        // 提前关闭流会同时取消请求，剩余数据不再传输
+        try (InputStream in = downloader.body(response, filename)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int[] allowed = new int[1];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                long position = segment.claim(bytesRead, allowed);
+                if (position < 0) {
+                    // 剩余部分已被其他线程接管
+                    break;
+                }
+                ByteBuffer view = ByteBuffer.wrap(buffer, 0, allowed[0]);
+                while (view.hasRemaining()) {
+                    position += out.write(view, position);
+                }
+                segment.written = position;
+                listener.onProgress(filename, downloaded.addAndGet(allowed[0]), part.state().size);
+
+                if (sinceCheckpoint.addAndGet(allowed[0]) >= CHECKPOINT_BYTES) {
+                    sinceCheckpoint.set(0);
+                    checkpoint();
+                }
+                if (allowed[0] < bytesRead) {
+                    break;
+                }
+            }
+        }
+        if (segment.remaining() > 0) {
+            throw new IOException("分段不完整: " + filename);
+        }
+    }
+
+    // 找到剩余最多的分段并拆分
+    private Segment steal() {
+        synchronized (segments) {
+            Segment slowest = null;
+            for (Segment segment : segments) {
+                if (slowest == null || segment.remaining() > slowest.remaining()) {
+                    slowest = segment;
+                }
+            }
+            Segment tail = slowest == null ? null : slowest.split();
+            if (tail != null) {
+                segments.add(tail);
+            }
+            return tail;
+        }
+    }
+
+    private void checkpoint() {
+        synchronized (segments) {
+            List<long[]> pending = new ArrayList<>();
+            for (Segment segment : segments) {
+                long[] range = segment.pending();
+                if (range[1] > range[0]) {
+                    pending.add(range);
+                }
+            }
+            part.state().segments = pending;
+        }
+        synchronized (part) {
+            part.saveQuietly();
+        }
+    }
+
+    private void await(CompletableFuture<Void> worker) throws IOException {
+        try {
+            worker.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SegmentFailure failure) {
+                throw failure.getCause();
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("下载被中断: " + filename);
+        }
+    }
+
+    private static class SegmentFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SegmentFailure(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.qudl.network;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.LongAdder;
+
+// 读取后按实际字节数扣除令牌并计入流量统计；超时检测只计算阻塞在读取中的时间，限速等待不会被当作连接空闲
+class ThrottledInputStream extends FilterInputStream {
+    private final RateLimiter limiter;
+    private final LongAdder fileBytes;
+    private final LongAdder totalBytes;
+
+    ThrottledInputStream(InputStream in, RateLimiter limiter, LongAdder fileBytes, LongAdder totalBytes) {
+        super(in);
+        this.limiter = limiter;
+        this.fileBytes = fileBytes;
+        this.totalBytes = totalBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value != -1) {
+            count(1);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int count = super.read(b, off, limiter.chunkSize(len));
+        if (count > 0) {
+            count(count);
+        }
+        return count;
+    }
+
+    private void count(int bytes) throws IOException {
+        fileBytes.add(bytes);
+        totalBytes.add(bytes);
+        limiter.acquire(bytes);
+    }
+}
@@ -0,0 +1,96 @@
+package com.qudl.network;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// HttpClient 的响应流没有读取超时，由后台线程关闭长时间没有数据的流
+// 只计算阻塞在读取中的时间，两次读取之间的限速等待或写盘不算空闲
+public class TimeoutInputStream extends FilterInputStream {
+    private static final Set<TimeoutInputStream> WATCHED = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "QUDL-Watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        WATCHDOG.scheduleWithFixedDelay(TimeoutInputStream::checkAll, 1, 1, TimeUnit.SECONDS);
+    }
+
+    private final long timeoutNanos;
+    private volatile long lastActivity = System.nanoTime();
+    private volatile boolean reading;
+    private volatile boolean timedOut;
+
+    public TimeoutInputStream(InputStream in, long timeoutMillis) {
+        super(in);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        WATCHED.add(this);
+    }
+
+    @Override
+    public int read() throws IOException {
+        startRead();
+        try {
+            int value = super.read();
+            return checkRead(value == -1 ? -1 : 1) == -1 ? -1 : value;
+        } finally {
+            reading = false;
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        startRead();
+        try {
+            return checkRead(super.read(b, off, len));
+        } finally {
+            reading = false;
+        }
+    }
+
+    private void startRead() {
+        lastActivity = System.nanoTime();
+        reading = true;
+    }
+
+    private int checkRead(int count) throws IOException {
+        if (timedOut) {
+            throw new SocketTimeoutException("读取超时");
+        }
+        lastActivity = System.nanoTime();
+        return count;
+    }
+
+    // 主动中止连接，阻塞中的 read 会立即返回
+    public void abort() {
+        WATCHED.remove(this);
+        try {
+            in.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        WATCHED.remove(this);
+        super.close();
+    }
+
+    private static void checkAll() {
+        long now = System.nanoTime();
+        for (TimeoutInputStream stream : WATCHED) {
+            if (stream.reading && now - stream.lastActivity > stream.timeoutNanos) {
+                stream.timedOut = true;
+                stream.abort();
+            }
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.qudl.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.qudl.config.QUDLConfig;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// 全机共享的内容寻址存储：文件按 SHA-256 保存一份，通过硬链接（不支持时复制）放入各实例的 mods 目录
+public class BlobStore {
+    private static final Logger LOGGER = QUDLLog.LOGGER;
+    private static final String USED_SUFFIX = ".used";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Gson GSON = new Gson();
+    // 长期未更新的保留记录视为对应的游戏目录已删除
+    private static final long PIN_EXPIRY_DAYS = 90;
+
+    private final Path objects;
+    // 各游戏目录仍需保留的文件（历史版本），清理时跳过
+    private final Path pins;
+    private final long maxSize;
+    // 本次会话中已按 SHA-256 核对过的文件
+    private final Set<String> checked = ConcurrentHashMap.newKeySet();
+    private FileChannel lockChannel;
+    private FileLock useLock;
+
+    private BlobStore(Path root, long maxSize) {
+        this.objects = root.resolve("objects");
+        this.pins = root.resolve("pins");
+        this.maxSize = maxSize;
+    }
+
+    // 打开存储并持有共享锁，其他实例正在使用时不会执行清理
+    public static BlobStore open(QUDLConfig.StoreConfig config) {
+        if (!config.enabled) {
+            return null;
+        }
+        Path root = config.path == null || config.path.isBlank()
+                ? Path.of(System.getProperty("user.home"), ".qudl", "store")
+                : Path.of(config.path);
+        BlobStore store = new BlobStore(root, config.max_size_mb * 1024L * 1024L);
+        try {
+            Files.createDirectories(store.objects);
+            store.lockChannel = FileChannel.open(root.resolve(".lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            store.useLock = store.lockChannel.lock(0, 1, true);
+            return store;
+        } catch (IOException e) {
+            LOGGER.warn("[QUDL] 无法打开本地存储 {}: {}", root, e.getMessage());
+            store.close();
+            return null;
+        }
+    }
+
+    public Path blob(String hash) {
+        String name = hash.toLowerCase(Locale.ROOT);
+        return objects.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    public boolean contains(String hash) {
+        return Files.isRegularFile(blob(hash));
+    }
+
+    // 存储中有该文件时放入目标位置，返回是否成功；安装的内容已按 SHA-256 核对
+    public boolean install(String hash, long size, Path target) {
+        Path blob = blob(hash);
+        try {
+            if (!Files.isRegularFile(blob)) {
+                return false;
+            }
+            // 旧文件被外部原地修改或损坏时丢弃该副本；每个文件每次会话只计算一次
+            if ((size >= 0 && Files.size(blob) != size) || !verify(hash, blob)) {
+                LOGGER.warn("[QUDL] 本地存储中的文件已损坏，将重新下载: {}", target.getFileName());
+                checked.remove(hash.toLowerCase(Locale.ROOT));
+                Files.deleteIfExists(blob);
+                return false;
+            }
+
+            Path tmp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + TEMP_SUFFIX);
+            linkOrCopy(blob, tmp);
+            FileUtils.moveAtomically(tmp, target);
+            touch(blob);
+            return true;
+        } catch (IOException e) {
+            LOGGER.debug("[QUDL] 从本地存储安装失败: {} - {}", target.getFileName(), e.getMessage());
+            return false;
+        }
+    }
+
+    // 将已按 SHA-256 校验的文件加入存储
+    public void adopt(String hash, Path file) {
+        Path blob = blob(hash);
+        try {
+            if (Files.isRegularFile(blob)) {
+                touch(blob);
+                return;
+            }
+            Files.createDirectories(blob.getParent());
+            Path tmp = blob.resolveSibling(blob.getFileName() + "." + UUID.randomUUID() + TEMP_SUFFIX);
+            linkOrCopy(file, tmp);
+            try {
+                // 其他实例可能同时写入同一内容，先完成者生效
+                Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+                checked.add(hash.toLowerCase(Locale.ROOT));
+            } catch (FileAlreadyExistsException e) {
+                Files.deleteIfExists(tmp);
+            }
+            touch(blob);
+        } catch (IOException e) {
+            LOGGER.debug("[QUDL] 加入本地存储失败: {} - {}", file.getFileName(), e.getMessage());
+        }
+    }
+
+    private boolean verify(String hash, Path blob) throws IOException {
+        String name = hash.toLowerCase(Locale.ROOT);
+        if (checked.contains(name)) {
+            return true;
+        }
+        if (!HashUtils.calculateSHA256(blob).equalsIgnoreCase(name)) {
+            return false;
+        }
+        checked.add(name);
+        return true;
+    }
+
+    // 记录 owner 需要保留的文件，替换其之前的记录；hashes 为空时移除记录
+    public void pin(String owner, Collection<String> hashes) {
+        Path path = pins.resolve(owner + ".json");
+        try {
+            if (hashes.isEmpty()) {
+                Files.deleteIfExists(path);
+                return;
+            }
+            Files.createDirectories(pins);
+            Path tmp = path.resolveSibling(path.getFileName() + "." + UUID.randomUUID() + TEMP_SUFFIX);
+            Files.writeString(tmp, GSON.toJson(hashes));
+            FileUtils.moveAtomically(tmp, path);
+        } catch (IOException e) {
+            LOGGER.warn("[QUDL] 保留记录保存失败: {}", e.getMessage());
+        }
+    }
+
+    // 超出容量时按最近使用时间清理不再被任何目录引用或保留的文件
+    public void collectGarbage() {
+        if (maxSize <= 0 || useLock == null) {
+            return;
+        }
+        try {
+            useLock.release();
+            FileLock exclusive = lockChannel.tryLock(0, 1, false);
+            if (exclusive == null) {
+                LOGGER.debug("[QUDL] 其他实例正在使用本地存储，跳过清理");
+                return;
+            }
+            try {
+                evict();
+            } finally {
+                exclusive.release();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("[QUDL] 本地存储清理失败: {}", e.getMessage());
+        } finally {
+            try {
+                useLock = lockChannel.lock(0, 1, true);
+            } catch (IOException e) {
+                useLock = null;
+            }
+        }
+    }
+
+    private void evict() throws IOException {
+        record Blob(Path path, long size, long lastUsed, boolean referenced) {}
+
+        Set<String> pinned = pinned();
+
+        List<Blob> blobs = new ArrayList<>();
+        long total = 0;
+        try (Stream<Path> files = Files.walk(objects, 2)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                String name = path.getFileName().toString();
+                if (!Files.isRegularFile(path) || name.endsWith(USED_SUFFIX)) {
+                    continue;
+                }
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+                long size = Files.size(path);
+                total += size;
+                blobs.add(new Blob(path, size, lastUsed(path), linkCount(path) > 1 || pinned.contains(name)));
+            }
+        }
+        if (total <= maxSize) {
+            return;
+        }
+
+        blobs.sort(Comparator.comparingLong(Blob::lastUsed));
+        long freed = 0;
+        int removed = 0;
+        for (Blob blob : blobs) {
+            if (total - freed <= maxSize) {
+                break;
+            }
+            if (blob.referenced()) {
+                continue;
+            }
+            Files.deleteIfExists(blob.path());
+            Files.deleteIfExists(usedMarker(blob.path()));
+            freed += blob.size();
+            removed++;
+        }
+        LOGGER.info("[QUDL] 本地存储清理完成：删除 {} 个文件，释放 {} MB", removed, freed / (1024 * 1024));
+    }
+
+    private Set<String> pinned() throws IOException {
+        Set<String> pinned = new HashSet<>();
+        if (Files.notExists(pins)) {
+            return pinned;
+        }
+        long expiry = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(PIN_EXPIRY_DAYS);
+        try (Stream<Path> files = Files.list(pins)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX) || Files.getLastModifiedTime(path).toMillis() < expiry) {
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+                try (Reader reader = Files.newBufferedReader(path)) {
+                    List<String> hashes = GSON.fromJson(reader, new TypeToken<List<String>>() {}.getType());
+                    if (hashes != null) {
+                        hashes.forEach(hash -> pinned.add(hash.toLowerCase(Locale.ROOT)));
+                    }
+                } catch (JsonParseException e) {
+                    LOGGER.debug("[QUDL] 忽略损坏的保留记录: {}", name);
+                }
+            }
+        }
+        return pinned;
+    }
+
+    public void close() {
+        try {
+            if (useLock != null) {
+                useLock.release();
+            }
+            if (lockChannel != null) {
+                lockChannel.close();
+            }
+        } catch (IOException ignored) {
+        }
+        useLock = null;
+    }
+
+    private static void linkOrCopy(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException | IOException e) {
+            // 跨分区或文件系统不支持硬链接
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // 硬链接共享修改时间，使用时间记录在单独的标记文件上，避免影响 mods 目录中文件的哈希索引
+    private static void touch(Path blob) throws IOException {
+        Path marker = usedMarker(blob);
+        try {
+            Files.createFile(marker);
+        } catch (FileAlreadyExistsException e) {
+            Files.setLastModifiedTime(marker, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+    }
+
+    private static long lastUsed(Path blob) throws IOException {
+        Path marker = usedMarker(blob);
+        return Files.getLastModifiedTime(Files.exists(marker) ? marker : blob).toMillis();
+    }
+
+    private static Path usedMarker(Path blob) {
+        return blob.resolveSibling(blob.getFileName() + USED_SUFFIX);
+    }
+
+    private static int linkCount(Path path) {
+        try {
+            return (Integer) Files.getAttribute(path, "unix:nlink");
+        } catch (UnsupportedOperationException | IllegalArgumentException | IOException e) {
+            return 1;
+        }
+    }
+}
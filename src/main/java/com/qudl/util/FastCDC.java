@@ -0,0 +1,91 @@
+package com.qudl.util;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+// FastCDC 内容定义分块：边界由内容决定，文件局部修改只影响附近的块
+// 服务端生成 manifest 时必须使用相同的 gear 表（SplitMix64，种子 0）和分块参数
+public class FastCDC {
+    public record Chunk(long offset, int length, String hash) {}
+
+    public record Params(int min, int avg, int max) {
+        public static final Params DEFAULT = new Params(16 * 1024, 64 * 1024, 256 * 1024);
+    }
+
+    // 新文件的分块布局，来自 manifest
+    public record Layout(Params params, List<Chunk> chunks) {}
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long seed = 0;
+        for (int i = 0; i < GEAR.length; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    public static List<Chunk> chunk(Path file, Params params) throws IOException {
+        int bits = 63 - Long.numberOfLeadingZeros(Math.max(2, params.avg()));
+        // 归一化分块：未达到平均大小时使用更严格的掩码
+        long maskS = (1L << (bits + 2)) - 1;
+        long maskL = (1L << (bits - 2)) - 1;
+
+        List<Chunk> chunks = new ArrayList<>();
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+        byte[] data = buffer.array();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long chunkStart = 0;
+            long position = 0;
+            int length = 0;
+            long fingerprint = 0;
+            int read;
+
+            while ((read = channel.read(buffer.clear())) != -1) {
+                int pending = 0;
+                for (int i = 0; i < read; i++) {
+                    length++;
+                    if (length > params.min()) {
+                        fingerprint = (fingerprint << 1) + GEAR[data[i] & 0xFF];
+                        long mask = length < params.avg() ? maskS : maskL;
+                        if ((fingerprint & mask) != 0 && length < params.max()) {
+                            continue;
+                        }
+                    } else if (length < params.max()) {
+                        continue;
+                    }
+
+                    digest.update(data, pending, i + 1 - pending);
+                    pending = i + 1;
+                    chunks.add(new Chunk(chunkStart, length, Hex.encodeHexString(digest.digest())));
+                    chunkStart += length;
+                    length = 0;
+                    fingerprint = 0;
+                }
+                digest.update(data, pending, read - pending);
+                position += read;
+            }
+
+            if (length > 0) {
+                chunks.add(new Chunk(chunkStart, length, Hex.encodeHexString(digest.digest())));
+            }
+            if (chunkStart + length != position) {
+                throw new IOException("分块结果与文件大小不一致: " + file.getFileName());
+            }
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,146 @@
+package com.qudl.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// 本地文件哈希索引：以 路径 + 大小 + 修改时间 + 文件键 为缓存键，元数据未变化时直接复用上次的 SHA-256 和快速摘要
+public class HashIndex {
+    private static final Logger LOGGER = QUDLLog.LOGGER;
+    private static final Path DEFAULT_PATH = Path.of("config/qudl_hash_index.json");
+    private static final Gson GSON = new Gson();
+
+    private final Path path;
+    private final Map<String, Entry> entries;
+    private volatile boolean dirty;
+
+    public static class Entry {
+        public long size;
+        public long mtime;
+        public String file_key;
+        public String sha256;
+        // manifest 声明的快速摘要，键为算法名
+        public Map<String, String> fast;
+    }
+
+    private static class IndexFile {
+        public int version = 1;
+        public Map<String, Entry> entries = new ConcurrentHashMap<>();
+    }
+
+    private HashIndex(Path path, Map<String, Entry> entries) {
+        this.path = path;
+        this.entries = new ConcurrentHashMap<>(entries);
+    }
+
+    public static HashIndex load() {
+        return load(DEFAULT_PATH);
+    }
+
+    public static HashIndex load(Path path) {
+        if (Files.exists(path)) {
+            try (Reader reader = Files.newBufferedReader(path)) {
+                IndexFile file = GSON.fromJson(reader, IndexFile.class);
+                if (file != null && file.entries != null) {
+                    return new HashIndex(path, file.entries);
+                }
+            } catch (IOException | JsonParseException e) {
+                LOGGER.warn("[QUDL] 哈希索引损坏，将重新建立: {}", e.getMessage());
+            }
+        }
+        return new HashIndex(path, Map.of());
+    }
+
+    // 元数据与索引记录一致时返回缓存的哈希，否则返回 null
+    public String lookup(Path file, BasicFileAttributes attrs) {
+        Entry entry = current(file, attrs);
+        return entry == null ? null : entry.sha256;
+    }
+
+    public String lookupFast(Path file, BasicFileAttributes attrs, String algorithm) {
+        Entry entry = current(file, attrs);
+        return entry == null || entry.fast == null ? null : entry.fast.get(algorithm.toLowerCase(Locale.ROOT));
+    }
+
+    public void put(Path file, BasicFileAttributes attrs, String sha256) {
+        update(file, attrs, entry -> entry.sha256 = sha256);
+    }
+
+    public void putFast(Path file, BasicFileAttributes attrs, String algorithm, String hash) {
+        update(file, attrs, entry -> {
+            entry.fast = entry.fast == null ? new HashMap<>() : new HashMap<>(entry.fast);
+            entry.fast.put(algorithm.toLowerCase(Locale.ROOT), hash);
+        });
+    }
+
+    private Entry current(Path file, BasicFileAttributes attrs) {
+        Entry entry = entries.get(key(file));
+        return matches(entry, attrs) ? entry : null;
+    }
+
+    private static boolean matches(Entry entry, BasicFileAttributes attrs) {
+        return entry != null
+                && entry.size == attrs.size()
+                && entry.mtime == attrs.lastModifiedTime().toMillis()
+                && sameFileKey(entry.file_key, attrs);
+    }
+
+    // 元数据未变化时保留已有的其他摘要；记录整体替换，读取方不会看到修改了一半的条目
+    private void update(Path file, BasicFileAttributes attrs, Consumer<Entry> change) {
+        entries.compute(key(file), (key, previous) -> {
+            Entry entry = new Entry();
+            entry.size = attrs.size();
+            entry.mtime = attrs.lastModifiedTime().toMillis();
+            entry.file_key = attrs.fileKey() == null ? null : attrs.fileKey().toString();
+            if (matches(previous, attrs)) {
+                entry.sha256 = previous.sha256;
+                entry.fast = previous.fast;
+            }
+            change.accept(entry);
+            return entry;
+        });
+        dirty = true;
+    }
+
+    public void save() {
+        // 清理已不存在的文件
+        if (entries.keySet().removeIf(key -> Files.notExists(Path.of(key)))) {
+            dirty = true;
+        }
+        if (!dirty) {
+            return;
+        }
+
+        IndexFile file = new IndexFile();
+        file.entries = entries;
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            Files.writeString(tmp, GSON.toJson(file));
+            FileUtils.moveAtomically(tmp, path);
+            dirty = false;
+        } catch (IOException e) {
+            LOGGER.warn("[QUDL] 哈希索引保存失败: {}", e.getMessage());
+        }
+    }
+
+    private static boolean sameFileKey(String recorded, BasicFileAttributes attrs) {
+        Object current = attrs.fileKey();
+        return recorded == null ? current == null : current != null && recorded.equals(current.toString());
+    }
+
+    private static String key(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+}
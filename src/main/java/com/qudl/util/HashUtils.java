@@ -1,24 +1,136 @@
 // HashUtils.java
 package com.qudl.util;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class HashUtils {
+    public interface HashListener {
+        void onHashed(Path file, String hash);
+        void onError(Path file, IOException e);
+    }
+
+    private record HashResult(Path file, String hash, IOException error) {}
+
+    // manifest 可声明的快速摘要算法，只用于本地变化检测
+    public static final String XXH64 = "xxh64";
+
+    // 超过该大小的文件按区域映射读取
+    private static final long MAP_THRESHOLD = 4L * 1024 * 1024;
+    private static final long MAP_REGION = 64L * 1024 * 1024;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    // Windows 下映射未被回收前文件无法替换，只使用直接缓冲区读取
+    private static final boolean USE_MMAP = !System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows");
+
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    private static class PoolHolder {
+        private static final AtomicInteger COUNTER = new AtomicInteger();
+        private static final ExecutorService POOL = Executors.newFixedThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()),
+                r -> {
+                    Thread thread = new Thread(r, "QUDL-Hash-" + COUNTER.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
     public static String calculateSHA256(Path file) throws IOException {
-        try (InputStream is = Files.newInputStream(file)) {
-            return DigestUtils.sha256Hex(is);
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        read(file, digest::update);
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    public static String calculateXXH64(Path file) throws IOException {
+        XXHash64 digest = new XXHash64();
+        read(file, digest::update);
+        return digest.digestHex();
+    }
+
+    public static boolean isSupported(String algorithm) {
+        return XXH64.equalsIgnoreCase(algorithm);
+    }
+
+    public static String calculate(Path file, String algorithm) throws IOException {
+        if (XXH64.equalsIgnoreCase(algorithm)) {
+            return calculateXXH64(file);
+        }
+        return calculateSHA256(file);
+    }
+
+    private static void read(Path file, Consumer<ByteBuffer> digest) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (USE_MMAP && size >= MAP_THRESHOLD) {
+                for (long pos = 0; pos < size; pos += MAP_REGION) {
+                    digest.accept(channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_REGION, size - pos)));
+                }
+            } else {
+                ByteBuffer buffer = BUFFERS.get();
+                buffer.clear();
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    digest.accept(buffer);
+                    buffer.clear();
+                }
+            }
         }
     }
 
-    public static boolean validateSHA256(Path file, String expectedHash) {
-        try {
-            return !calculateSHA256(file).equals(expectedHash);
-        } catch (IOException e) {
-            return true;
+    // 提交到哈希线程池异步计算，algorithm 为 null 或不支持时计算 SHA-256
+    public static CompletableFuture<String> submit(Path file, String algorithm) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return calculate(file, algorithm);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, PoolHolder.POOL);
+    }
+
+    // 多线程批量计算，结果按完成顺序在调用线程上回调
+    public static void calculateSHA256All(Collection<Path> files, HashListener listener) throws InterruptedException {
+        CompletionService<HashResult> completion = new ExecutorCompletionService<>(PoolHolder.POOL);
+        for (Path file : files) {
+            completion.submit(() -> {
+                try {
+                    return new HashResult(file, calculateSHA256(file), null);
+                } catch (IOException e) {
+                    return new HashResult(file, null, e);
+                }
+            });
+        }
+
+        for (int i = 0; i < files.size(); i++) {
+            HashResult result;
+            try {
+                result = completion.take().get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+            if (result.error() != null) {
+                listener.onError(result.file(), result.error());
+            } else {
+                listener.onHashed(result.file(), result.hash());
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,229 @@
+package com.qudl.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+// 一次更新会话的计时与吞吐统计，结束时写入 JSON 报告，便于对比不同玩家和服务器的表现
+public class Metrics {
+    private static final Logger LOGGER = QUDLLog.LOGGER;
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final String REPORT_PREFIX = "qudl-metrics-";
+    // 只保留最近的报告
+    private static final int MAX_REPORTS = 20;
+
+    public static final String MANIFEST_REQUEST = "manifest_request";
+    public static final String SCAN = "scan";
+    public static final String HASH = "hash";
+    public static final String QUEUE_WAIT = "queue_wait";
+    public static final String REQUEST = "request";
+    public static final String TRANSFER = "transfer";
+    public static final String VERIFY = "verify";
+
+    private final Instant startedAt = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Phase> phases = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, FileStats> files = new ConcurrentHashMap<>();
+    private final LongAdder networkBytes = new LongAdder();
+
+    // 按 2 的幂划分的耗时直方图，单位毫秒
+    private static class Phase {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final AtomicLongArray buckets = new AtomicLongArray(32);
+
+        void add(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            buckets.incrementAndGet(Math.min(31, 64 - Long.numberOfLeadingZeros(millis)));
+        }
+    }
+
+    public static class FileStats {
+        private final String filename;
+        private final LongAdder bytes = new LongAdder();
+        private final AtomicInteger retries = new AtomicInteger();
+        private volatile long size = -1;
+        private volatile long queuedAt;
+        private volatile long startedAt;
+        private volatile long queueWaitNanos;
+        private volatile long durationNanos;
+        private volatile String mode;
+        private volatile String result;
+        private volatile String error;
+
+        private FileStats(String filename) {
+            this.filename = filename;
+        }
+
+        public LongAdder bytes() {
+            return bytes;
+        }
+
+        public void queued(long size) {
+            this.size = size;
+            this.queuedAt = System.nanoTime();
+        }
+
+        public void started() {
+            if (startedAt == 0) {
+                startedAt = System.nanoTime();
+                if (queuedAt != 0) {
+                    queueWaitNanos = startedAt - queuedAt;
+                }
+            }
+        }
+
+        public void retried() {
+            retries.incrementAndGet();
+        }
+
+        public void mode(String mode) {
+            this.mode = mode;
+        }
+
+        public void finished(String result, String error) {
+            long from = startedAt != 0 ? startedAt : queuedAt;
+            this.durationNanos = from == 0 ? 0 : System.nanoTime() - from;
+            this.result = result;
+            this.error = error;
+        }
+    }
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    // 记录从 startNanos 到现在的耗时
+    public void record(String phase, long startNanos) {
+        phases.computeIfAbsent(phase, key -> new Phase()).add(System.nanoTime() - startNanos);
+    }
+
+    public void increment(String counter) {
+        counters.computeIfAbsent(counter, key -> new LongAdder()).increment();
+    }
+
+    public FileStats file(String filename) {
+        return files.computeIfAbsent(filename, FileStats::new);
+    }
+
+    public LongAdder networkBytes() {
+        return networkBytes;
+    }
+
+    // 写入 <dir>/qudl-metrics-<时间>.json，返回报告路径
+    public Path write(Path dir, Map<String, Object> session) {
+        Path path = dir.resolve(REPORT_PREFIX + LocalDateTime.now().format(FILE_TIME) + ".json");
+        try {
+            Files.createDirectories(dir);
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.writeString(tmp, GSON.toJson(report(session)));
+            FileUtils.moveAtomically(tmp, path);
+            pruneReports(dir);
+            return path;
+        } catch (IOException e) {
+            LOGGER.warn("[QUDL] 统计报告保存失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static void pruneReports(Path dir) throws IOException {
+        List<Path> reports;
+        try (Stream<Path> stream = Files.list(dir)) {
+            reports = stream
+                    .filter(path -> path.getFileName().toString().startsWith(REPORT_PREFIX))
+                    .filter(path -> path.getFileName().toString().endsWith(".json"))
+                    .sorted(Comparator.comparing(path -> path.getFileName().toString()))
+                    .toList();
+        }
+        for (int i = 0; i < reports.size() - MAX_REPORTS; i++) {
+            Files.deleteIfExists(reports.get(i));
+        }
+    }
+
+    private Map<String, Object> report(Map<String, Object> session) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long bytes = networkBytes.sum();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("version", 1);
+        report.put("started_at", startedAt.toString());
+        report.put("duration_ms", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        report.putAll(session);
+        report.put("network_bytes", bytes);
+        report.put("throughput_kbps", kbps(bytes, elapsedNanos));
+
+        Map<String, Object> phaseReport = new LinkedHashMap<>();
+        phases.forEach((name, phase) -> {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            long count = phase.count.sum();
+            entry.put("count", count);
+            entry.put("total_ms", TimeUnit.NANOSECONDS.toMillis(phase.totalNanos.sum()));
+            entry.put("avg_ms", count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(phase.totalNanos.sum() / count));
+            entry.put("max_ms", TimeUnit.NANOSECONDS.toMillis(phase.maxNanos.get()));
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < phase.buckets.length(); i++) {
+                long value = phase.buckets.get(i);
+                if (value > 0) {
+                    histogram.put("<" + (1L << i), value);
+                }
+            }
+            entry.put("histogram_ms", histogram);
+            phaseReport.put(name, entry);
+        });
+        report.put("phases", phaseReport);
+
+        Map<String, Long> counterReport = new LinkedHashMap<>();
+        counters.forEach((name, value) -> counterReport.put(name, value.sum()));
+        report.put("counters", counterReport);
+
+        List<Map<String, Object>> fileReport = new ArrayList<>();
+        for (FileStats stats : files.values()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            long fileBytes = stats.bytes.sum();
+            entry.put("filename", stats.filename);
+            entry.put("size", stats.size);
+            entry.put("mode", stats.mode);
+            entry.put("result", stats.result);
+            entry.put("network_bytes", fileBytes);
+            entry.put("retries", stats.retries.get());
+            entry.put("queue_wait_ms", TimeUnit.NANOSECONDS.toMillis(stats.queueWaitNanos));
+            entry.put("duration_ms", TimeUnit.NANOSECONDS.toMillis(stats.durationNanos));
+            entry.put("throughput_kbps", kbps(fileBytes, stats.durationNanos));
+            if (stats.error != null) {
+                entry.put("error", stats.error);
+            }
+            fileReport.add(entry);
+        }
+        report.put("files", fileReport);
+        return report;
+    }
+
+    private static long kbps(long bytes, long nanos) {
+        return nanos <= 0 ? 0 : (long) (bytes / 1024.0 / (nanos / 1e9));
+    }
+}
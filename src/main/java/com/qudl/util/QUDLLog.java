@@ -0,0 +1,12 @@
+package com.qudl.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// 核心代码使用的日志，不依赖模组入口类，游戏外（命令行）也可加载
+public class QUDLLog {
+    public static final Logger LOGGER = LoggerFactory.getLogger("QUDL");
+
+    private QUDLLog() {
+    }
+}
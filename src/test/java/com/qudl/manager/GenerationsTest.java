@@ -0,0 +1,193 @@
+package com.qudl.manager;
+
+import com.qudl.config.QUDLConfig;
+import com.qudl.util.BlobStore;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GenerationsTest {
+    @TempDir
+    Path gameDir;
+    private Path modsDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        modsDir = Files.createDirectories(gameDir.resolve("mods"));
+    }
+
+    // 与下载相同，先写临时文件再替换，存储中以硬链接保存的旧内容不受影响
+    private Generations.FileRef install(String filename, String content) throws IOException {
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        Path tmp = Files.write(modsDir.resolve(filename + ".tmp"), data);
+        Files.move(tmp, modsDir.resolve(filename), StandardCopyOption.REPLACE_EXISTING);
+        return new Generations.FileRef(DigestUtils.sha256Hex(data), data.length);
+    }
+
+    private static Map<String, Generations.FileRef> files(Object... pairs) {
+        Map<String, Generations.FileRef> files = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            files.put((String) pairs[i], (Generations.FileRef) pairs[i + 1]);
+        }
+        return files;
+    }
+
+    private static Generations.FileRef ref(String hash, long size) {
+        return new Generations.FileRef(hash, size);
+    }
+
+    @Test
+    void commitRemovesOnlyFilesDroppedFromPreviousGeneration() throws IOException {
+        Generations generations = Generations.load(gameDir);
+        Generations.FileRef a = install("a.jar", "a1");
+        Generations.FileRef b = install("b.jar", "b1");
+        Generations.Generation first = generations.record("1.20.1", files("a.jar", a, "b.jar", b));
+        assertEquals(0, generations.commit(first, modsDir));
+
+        // 玩家自己放入的文件不属于任何版本
+        install("user.jar", "mine");
+        Generations.FileRef a2 = install("a.jar", "a2");
+        Generations.FileRef c = install("c.jar", "c1");
+        Generations.Generation second = generations.record("1.20.1", files("a.jar", a2, "c.jar", c));
+
+        assertEquals(1, generations.commit(second, modsDir));
+        assertFalse(Files.exists(modsDir.resolve("b.jar")));
+        assertTrue(Files.exists(modsDir.resolve("a.jar")));
+        assertTrue(Files.exists(modsDir.resolve("c.jar")));
+        assertTrue(Files.exists(modsDir.resolve("user.jar")));
+        assertSame(second, generations.active());
+        assertSame(first, generations.previous());
+    }
+
+    @Test
+    void recordReusesIdenticalGeneration() throws IOException {
+        Generations generations = Generations.load(gameDir);
+        Generations.FileRef a = install("a.jar", "a1");
+        Generations.Generation first = generations.record("1.20.1", files("a.jar", a));
+        generations.record("1.20.1", files("a.jar", install("a.jar", "a2")));
+
+        assertSame(first, generations.record("1.20.1", files("a.jar", a)));
+        assertEquals(2, generations.list().size());
+        assertSame(first, generations.list().get(1));
+    }
+
+    @Test
+    void stateSurvivesSaveAndLoad() throws IOException {
+        Generations generations = Generations.load(gameDir);
+        Generations.Generation generation = generations.record("1.20.1", files("a.jar", install("a.jar", "a1")));
+        generations.commit(generation, modsDir);
+        generations.save();
+
+        Generations loaded = Generations.load(gameDir);
+        assertEquals(generation.id, loaded.active().id);
+        assertEquals(generation.files, loaded.active().files);
+        assertNull(loaded.previous());
+    }
+
+    @Test
+    void trimKeepsActiveAndNewestWithinBudget() {
+        Generations generations = Generations.load(gameDir);
+        Generations.Generation oldest = generations.record("1", files("a.jar", ref("h1", 100), "shared.jar", ref("s", 1000)));
+        Generations.Generation older = generations.record("1", files("a.jar", ref("h2", 100), "shared.jar", ref("s", 1000)));
+        Generations.Generation newer = generations.record("1", files("a.jar", ref("h3", 100), "shared.jar", ref("s", 1000)));
+        Generations.Generation active = generations.record("1", files("a.jar", ref("h4", 100), "shared.jar", ref("s", 1000)));
+        generations.commit(active, modsDir);
+
+        // 共享文件已由活动代保留，不计入其他代的大小
+        Set<String> keep = generations.trim(250, null);
+        assertEquals(Set.of("h4", "s", "h3", "h2"), keep);
+        assertNull(generations.find(oldest.id));
+        assertSame(older, generations.find(older.id));
+        assertSame(newer, generations.find(newer.id));
+    }
+
+    @Test
+    void trimDropsEverythingOlderOnceBudgetIsExceeded() {
+        Generations generations = Generations.load(gameDir);
+        Generations.Generation small = generations.record("1", files("a.jar", ref("h1", 10)));
+        generations.record("1", files("a.jar", ref("h2", 1000)));
+        Generations.Generation active = generations.record("1", files("a.jar", ref("h3", 10)));
+        generations.commit(active, modsDir);
+
+        // 超出容量后更旧的版本即使很小也移除，保证回滚顺序连续
+        assertEquals(Set.of("h3"), generations.trim(500, null));
+        assertNull(generations.find(small.id));
+        assertEquals(1, generations.list().size());
+    }
+
+    @Test
+    void trimKeepsPendingStagedGenerationOverBudget() {
+        Generations generations = Generations.load(gameDir);
+        Generations.Generation old = generations.record("1", files("a.jar", ref("h1", 600)));
+        Generations.Generation pending = generations.record("1", files("a.jar", ref("h2", 1000), "b.jar", ref("h3", 1000)));
+
+        // 首次后台更新时没有活动代，暂存的版本即使超出容量也保留
+        assertEquals(Set.of("h2", "h3"), generations.trim(500, pending.id));
+        assertSame(pending, generations.find(pending.id));
+        assertNull(generations.find(old.id));
+    }
+
+    @Test
+    void activateRestoresPreviousGenerationOffline() throws IOException {
+        QUDLConfig.StoreConfig config = new QUDLConfig.StoreConfig();
+        config.path = gameDir.resolve("store").toString();
+        BlobStore store = BlobStore.open(config);
+        try {
+            Generations generations = Generations.load(gameDir);
+            Generations.FileRef a1 = install("a.jar", "a1");
+            Generations.FileRef b1 = install("b.jar", "b1");
+            store.adopt(a1.hash(), modsDir.resolve("a.jar"));
+            store.adopt(b1.hash(), modsDir.resolve("b.jar"));
+            Generations.Generation first = generations.record("1", files("a.jar", a1, "b.jar", b1));
+            generations.commit(first, modsDir);
+
+            Files.delete(modsDir.resolve("b.jar"));
+            Generations.FileRef a2 = install("a.jar", "a2");
+            store.adopt(a2.hash(), modsDir.resolve("a.jar"));
+            generations.commit(generations.record("1", files("a.jar", a2)), modsDir);
+
+            assertTrue(generations.activate(generations.previous(), modsDir, store));
+            assertEquals("a1", Files.readString(modsDir.resolve("a.jar")));
+            assertEquals("b1", Files.readString(modsDir.resolve("b.jar")));
+            assertEquals(first.id, generations.active().id);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void activateLeavesModsUntouchedWhenBlobIsMissing() throws IOException {
+        QUDLConfig.StoreConfig config = new QUDLConfig.StoreConfig();
+        config.path = gameDir.resolve("store").toString();
+        BlobStore store = BlobStore.open(config);
+        try {
+            Generations generations = Generations.load(gameDir);
+            Generations.Generation first = generations.record("1", files("a.jar", install("a.jar", "a1")));
+            generations.commit(first, modsDir);
+            Generations.Generation second = generations.record("1", files("a.jar", install("a.jar", "a2")));
+            generations.commit(second, modsDir);
+
+            assertFalse(generations.activate(first, modsDir, store));
+            assertEquals("a2", Files.readString(modsDir.resolve("a.jar")));
+            assertSame(second, generations.active());
+        } finally {
+            store.close();
+        }
+    }
+}
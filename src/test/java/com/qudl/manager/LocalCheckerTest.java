@@ -0,0 +1,132 @@
+package com.qudl.manager;
+
+import com.qudl.util.HashIndex;
+import com.qudl.util.HashUtils;
+import com.qudl.util.Metrics;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalCheckerTest {
+    @TempDir
+    Path dir;
+
+    private final List<String> outdated = new CopyOnWriteArrayList<>();
+    private final List<String> verified = new CopyOnWriteArrayList<>();
+
+    private LocalChecker checker(HashIndex index) {
+        return checker(index, false);
+    }
+
+    private LocalChecker checker(HashIndex index, boolean needsSha256) {
+        return new LocalChecker(dir, index, new Metrics(), new LocalChecker.Callback() {
+            @Override
+            public void onOutdated(ManifestEntry entry) {
+                outdated.add(entry.filename());
+            }
+
+            @Override
+            public void onVerified(ManifestEntry entry, Path file, String hash) {
+                verified.add(entry.filename() + "=" + hash);
+            }
+
+            @Override
+            public boolean needsSha256(ManifestEntry entry) {
+                return needsSha256;
+            }
+        });
+    }
+
+    private static ManifestEntry entry(String filename, byte[] data) {
+        return new ManifestEntry(filename, DigestUtils.sha256Hex(data), data.length, null, false, null, null);
+    }
+
+    private static ManifestEntry fastEntry(String filename, String sha256, int size) {
+        return new ManifestEntry(filename, sha256, size, null, false, HashUtils.XXH64, "0123456789abcdef");
+    }
+
+    // 索引中只有与 manifest 相同的快速摘要
+    private static HashIndex fastIndex(Path file, Path path) throws Exception {
+        HashIndex index = HashIndex.load(path);
+        index.putFast(file, Files.readAttributes(file, BasicFileAttributes.class), HashUtils.XXH64, "0123456789abcdef");
+        return index;
+    }
+
+    @Test
+    void indexHitReportsVerifiedFile() throws Exception {
+        byte[] data = "mod".getBytes(StandardCharsets.UTF_8);
+        Path file = Files.write(dir.resolve("a.jar"), data);
+        HashIndex index = HashIndex.load(dir.resolve("index.json"));
+        index.put(file, Files.readAttributes(file, BasicFileAttributes.class), DigestUtils.sha256Hex(data));
+
+        // 索引命中的文件同样交给存储保留
+        LocalChecker checker = checker(index);
+        checker.check(entry("a.jar", data));
+        checker.await();
+        assertTrue(outdated.isEmpty());
+        assertEquals(List.of("a.jar=" + DigestUtils.sha256Hex(data)), verified);
+    }
+
+    @Test
+    void indexMismatchReportsOutdatedFile() throws Exception {
+        byte[] data = "mod".getBytes(StandardCharsets.UTF_8);
+        Path file = Files.write(dir.resolve("a.jar"), data);
+        HashIndex index = HashIndex.load(dir.resolve("index.json"));
+        index.put(file, Files.readAttributes(file, BasicFileAttributes.class), DigestUtils.sha256Hex("old"));
+
+        LocalChecker checker = checker(index);
+        checker.check(entry("a.jar", data));
+        checker.await();
+        assertEquals(List.of("a.jar"), outdated);
+        assertTrue(verified.isEmpty());
+    }
+
+    @Test
+    void fastIndexHitIsNotReportedAsSha256() throws Exception {
+        byte[] data = "mod".getBytes(StandardCharsets.UTF_8);
+        Path file = Files.write(dir.resolve("a.jar"), data);
+
+        LocalChecker checker = checker(fastIndex(file, dir.resolve("index.json")));
+        checker.check(fastEntry("a.jar", DigestUtils.sha256Hex(data), data.length));
+        checker.await();
+        assertTrue(outdated.isEmpty());
+        assertTrue(verified.isEmpty());
+    }
+
+    @Test
+    void fastIndexHitComputesSha256WhenNeeded() throws Exception {
+        byte[] data = "mod".getBytes(StandardCharsets.UTF_8);
+        Path file = Files.write(dir.resolve("a.jar"), data);
+        HashIndex index = fastIndex(file, dir.resolve("index.json"));
+
+        LocalChecker checker = checker(index, true);
+        checker.check(fastEntry("a.jar", DigestUtils.sha256Hex(data), data.length));
+        checker.await();
+        assertTrue(outdated.isEmpty());
+        assertEquals(List.of("a.jar=" + DigestUtils.sha256Hex(data)), verified);
+        assertEquals(DigestUtils.sha256Hex(data), index.lookup(file, Files.readAttributes(file, BasicFileAttributes.class)));
+    }
+
+    @Test
+    void fastIndexHitWithWrongContentIsOutdatedWhenSha256IsComputed() throws Exception {
+        byte[] data = "mod".getBytes(StandardCharsets.UTF_8);
+        Path file = Files.write(dir.resolve("a.jar"), data);
+
+        // 快速摘要一致但内容与 manifest 的 SHA-256 不符，不能以该哈希加入存储
+        LocalChecker checker = checker(fastIndex(file, dir.resolve("index.json")), true);
+        checker.check(fastEntry("a.jar", DigestUtils.sha256Hex("other"), data.length));
+        checker.await();
+        assertEquals(List.of("a.jar"), outdated);
+        assertTrue(verified.isEmpty());
+    }
+}
@@ -0,0 +1,164 @@
+package com.qudl.manager;
+
+import com.qudl.config.QUDLConfig;
+import com.qudl.network.QUDLHttp;
+import com.qudl.testing.StandInServer;
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QUDLUpdateManagerTest {
+    private static final String VERSION = "1.20.1";
+    private static final String MANIFEST = "api/" + VERSION;
+
+    @TempDir
+    Path gameDir;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(gameDir.resolve("mods"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    // manifest 只发送前 cut 字节，停顿 stallMillis 后断开；cut 为负时完整发送
+    private static class ManifestServer extends StandInServer {
+        volatile int cut = -1;
+        volatile long stallMillis;
+
+        ManifestServer() throws IOException {
+        }
+
+        @Override
+        protected void write(HttpExchange exchange, OutputStream out, byte[] data, int offset, int length) throws IOException {
+            if (cut < 0 || !exchange.getRequestURI().getPath().equals("/" + MANIFEST)) {
+                super.write(exchange, out, data, offset, length);
+                return;
+            }
+            super.write(exchange, out, data, offset, Math.min(cut, length));
+            out.flush();
+            try {
+                Thread.sleep(stallMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // 未写完声明的长度就断开连接，客户端读到提前结束的响应
+            throw new IOException("manifest已截断");
+        }
+    }
+
+    // 两个文件的 manifest，返回截断点：第一条记录之后、第二条记录中间
+    private static int publish(StandInServer server, byte[] a, byte[] b) {
+        String hashA = server.put("mods/" + VERSION + "/a.jar", a);
+        String hashB = server.put("mods/" + VERSION + "/b.jar", b);
+        String first = "{\"filename\":\"a.jar\",\"hash\":\"" + hashA + "\",\"size\":" + a.length + "}";
+        String manifest = "{\"files\":[" + first
+                + ",{\"filename\":\"b.jar\",\"hash\":\"" + hashB + "\",\"size\":" + b.length + "}]}";
+        server.put(MANIFEST, manifest.getBytes(StandardCharsets.UTF_8));
+        return ("{\"files\":[" + first + ",{\"filename\":\"b.j").length();
+    }
+
+    private QUDLConfig config(StandInServer server) {
+        QUDLConfig config = new QUDLConfig();
+        config.providers.api.base_url = server.url("api/");
+        config.providers.api.current_version = VERSION;
+        config.providers.mods.base_url = server.url("mods");
+        config.store.enabled = false;
+        config.download.read_timeout_ms = 1000;
+        return config;
+    }
+
+    private QUDLUpdateManager.Result run(QUDLConfig config) throws Exception {
+        QUDLUpdateManager session = new QUDLUpdateManager(config, gameDir, false, QUDLHttp.newClient(config.download));
+        CompletableFuture<QUDLUpdateManager.Result> finished = new CompletableFuture<>();
+        session.attach(new UpdateListener() {
+            @Override
+            public void onStatus(String message) {
+            }
+
+            @Override
+            public void onError(String message) {
+            }
+
+            @Override
+            public void onFinished(QUDLUpdateManager.Result result) {
+                finished.complete(result);
+            }
+        });
+        session.start(executor);
+        return finished.get(10, TimeUnit.SECONDS);
+    }
+
+    private boolean manifestCached(QUDLConfig config) {
+        return ManifestCache.load(gameDir.resolve("config")).isAvailableFor(config.providers.api.base_url + VERSION);
+    }
+
+    @Test
+    void completeManifestUpdatesModsAndIsCached() throws Exception {
+        try (ManifestServer server = new ManifestServer()) {
+            byte[] a = "a1".getBytes(StandardCharsets.UTF_8);
+            byte[] b = "b1".getBytes(StandardCharsets.UTF_8);
+            publish(server, a, b);
+            QUDLConfig config = config(server);
+
+            QUDLUpdateManager.Result result = run(config);
+            assertEquals(0, result.failed());
+            assertEquals(2, result.updated());
+            assertArrayEquals(a, Files.readAllBytes(gameDir.resolve("mods/a.jar")));
+            assertArrayEquals(b, Files.readAllBytes(gameDir.resolve("mods/b.jar")));
+            assertTrue(manifestCached(config));
+        }
+    }
+
+    @Test
+    void truncatedManifestFailsWithoutCaching() throws Exception {
+        try (ManifestServer server = new ManifestServer()) {
+            server.cut = publish(server, "a1".getBytes(StandardCharsets.UTF_8), "b1".getBytes(StandardCharsets.UTF_8));
+            QUDLConfig config = config(server);
+
+            QUDLUpdateManager.Result result = run(config);
+            assertTrue(result.failed() > 0);
+            assertFalse(result.cancelled());
+            // 截断点之后的记录没有被当作完整 manifest 处理
+            assertFalse(Files.exists(gameDir.resolve("mods/b.jar")));
+            assertFalse(manifestCached(config));
+        }
+    }
+
+    @Test
+    void stalledManifestTimesOut() throws Exception {
+        try (ManifestServer server = new ManifestServer()) {
+            server.cut = publish(server, "a1".getBytes(StandardCharsets.UTF_8), "b1".getBytes(StandardCharsets.UTF_8));
+            // 远超读取超时，只能由客户端的读取超时结束
+            server.stallMillis = 60_000;
+            QUDLConfig config = config(server);
+
+            long start = System.nanoTime();
+            QUDLUpdateManager.Result result = run(config);
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "manifest停顿后会话没有及时结束");
+            assertTrue(result.failed() > 0);
+            assertFalse(manifestCached(config));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.qudl.network;
+
+import com.qudl.config.QUDLConfig;
+import com.qudl.testing.RecordingListener;
+import com.qudl.testing.StandInServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BundleDownloadTest {
+    @TempDir
+    Path dir;
+
+    // 文件名到内容，内容相同的文件共用一个打包条目
+    private static Map<String, byte[]> files() {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("empty-a.cfg", new byte[0]);
+        files.put("empty-b.cfg", new byte[0]);
+        files.put("empty-c.cfg", new byte[0]);
+        files.put("copy-1.json", "{\"same\":true}".getBytes(StandardCharsets.UTF_8));
+        files.put("copy-2.json", "{\"same\":true}".getBytes(StandardCharsets.UTF_8));
+        files.put("unique.json", "{\"unique\":true}".getBytes(StandardCharsets.UTF_8));
+        return files;
+    }
+
+    private void download(StandInServer server, Map<String, byte[]> files) throws InterruptedException {
+        QUDLConfig.DownloadConfig config = new QUDLConfig.DownloadConfig();
+        QUDLDownloader downloader = new QUDLDownloader(QUDLHttp.newClient(config), config);
+        MirrorSet mirrors = new MirrorSet(List.of(server.baseUrl()), config);
+        CountDownLatch finished = new CountDownLatch(files.size());
+        List<QUDLDownloader.BundleItem> items = new ArrayList<>();
+        List<RecordingListener> listeners = new ArrayList<>();
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            String hash = server.put(file.getKey(), file.getValue());
+            RecordingListener listener = new RecordingListener(hash, file.getValue().length, null, finished);
+            listeners.add(listener);
+            items.add(new QUDLDownloader.BundleItem(file.getKey(), file.getKey(), false, listener));
+        }
+
+        downloader.downloadBundle(mirrors, "bundle", items, dir);
+        assertTrue(finished.await(30, TimeUnit.SECONDS), "有文件没有结束");
+        downloader.shutdown();
+
+        // 每个文件恰好结束一次
+        for (RecordingListener listener : listeners) {
+            assertEquals(1, listener.completions() + listener.errors());
+            assertEquals(1, listener.completions(), String.valueOf(listener.error()));
+        }
+    }
+
+    @Test
+    void completesEveryItemSharingAHash() throws Exception {
+        try (StandInServer server = new StandInServer()) {
+            Map<String, byte[]> files = files();
+            download(server, files);
+
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                assertArrayEquals(file.getValue(), Files.readAllBytes(dir.resolve(file.getKey())), file.getKey());
+            }
+            // 三种内容只传输一次，没有退回逐个下载
+            assertEquals(0 + 13 + 15, server.bytesSent());
+        }
+    }
+
+    @Test
+    void fallsBackPerFileWhenBundlesAreUnsupported() throws Exception {
+        try (StandInServer server = new StandInServer()) {
+            server.setBundles(false);
+            Map<String, byte[]> files = files();
+            download(server, files);
+
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                assertArrayEquals(file.getValue(), Files.readAllBytes(dir.resolve(file.getKey())), file.getKey());
+            }
+        }
+    }
+}
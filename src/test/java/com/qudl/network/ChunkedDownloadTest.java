@@ -0,0 +1,149 @@
+package com.qudl.network;
+
+import com.qudl.config.QUDLConfig;
+import com.qudl.testing.RecordingListener;
+import com.qudl.testing.StandInServer;
+import com.qudl.util.FastCDC;
+import com.qudl.util.HashUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkedDownloadTest {
+    private static final long GAP = 64 * 1024;
+
+    @TempDir
+    Path dir;
+
+    private static List<long[]> coalesce(long[]... ranges) {
+        List<long[]> missing = new ArrayList<>();
+        for (long[] range : ranges) {
+            ChunkedDownload.addMissing(missing, range[0], range[1]);
+        }
+        return missing;
+    }
+
+    @Test
+    void adjacentRangesMerge() {
+        List<long[]> missing = coalesce(new long[]{0, 100}, new long[]{100, 250}, new long[]{250, 300});
+        assertEquals(1, missing.size());
+        assertArrayEquals(new long[]{0, 300}, missing.get(0));
+    }
+
+    @Test
+    void rangesWithinGapMerge() {
+        List<long[]> missing = coalesce(new long[]{0, 100}, new long[]{100 + GAP, 200 + GAP});
+        assertEquals(1, missing.size());
+        assertArrayEquals(new long[]{0, 200 + GAP}, missing.get(0));
+    }
+
+    @Test
+    void rangesBeyondGapStaySeparate() {
+        List<long[]> missing = coalesce(new long[]{0, 100}, new long[]{101 + GAP, 200 + GAP}, new long[]{300 + GAP, 400 + GAP});
+        assertEquals(2, missing.size());
+        assertArrayEquals(new long[]{0, 100}, missing.get(0));
+        assertArrayEquals(new long[]{101 + GAP, 400 + GAP}, missing.get(1));
+    }
+
+    @Test
+    void deltaSyncFetchesOnlyChangedChunks() throws Exception {
+        byte[] original = new byte[4 * 1024 * 1024];
+        new SplittableRandom(7).nextBytes(original);
+        byte[] updated = original.clone();
+        // 修改中间的一小段
+        for (int i = 0; i < 2000; i++) {
+            updated[original.length / 2 + i] ^= 0x5A;
+        }
+
+        Path target = dir.resolve("mod.jar");
+        Files.write(target, original);
+        Path reference = Files.write(dir.resolve("reference.bin"), updated);
+        FastCDC.Layout layout = new FastCDC.Layout(FastCDC.Params.DEFAULT, FastCDC.chunk(reference, FastCDC.Params.DEFAULT));
+
+        try (StandInServer server = new StandInServer()) {
+            String hash = server.put("mod.jar", updated);
+            QUDLConfig.DownloadConfig config = new QUDLConfig.DownloadConfig();
+            QUDLDownloader downloader = new QUDLDownloader(QUDLHttp.newClient(config), config);
+            CountDownLatch finished = new CountDownLatch(1);
+            RecordingListener listener = new RecordingListener(hash, updated.length, layout, finished);
+
+            downloader.downloadFile(server.url("mod.jar"), "mod.jar", dir, listener);
+            assertTrue(finished.await(30, TimeUnit.SECONDS));
+            downloader.shutdown();
+
+            assertEquals(1, listener.completions(), String.valueOf(listener.error()));
+            assertEquals(hash, HashUtils.calculateSHA256(target));
+            assertTrue(server.bytesSent() < updated.length / 4, "sent " + server.bytesSent());
+        }
+    }
+
+    @Test
+    void stagedDeltaSyncReadsPreviousVersionFromMods() throws Exception {
+        byte[] original = new byte[4 * 1024 * 1024];
+        new SplittableRandom(9).nextBytes(original);
+        byte[] updated = original.clone();
+        for (int i = 0; i < 2000; i++) {
+            updated[original.length / 3 + i] ^= 0x33;
+        }
+
+        Path mods = Files.createDirectories(dir.resolve("mods"));
+        Path staging = Files.createDirectories(dir.resolve("qudl_staging"));
+        Files.write(mods.resolve("mod.jar"), original);
+        Path reference = Files.write(dir.resolve("reference.bin"), updated);
+        FastCDC.Layout layout = new FastCDC.Layout(FastCDC.Params.DEFAULT, FastCDC.chunk(reference, FastCDC.Params.DEFAULT));
+
+        try (StandInServer server = new StandInServer()) {
+            String hash = server.put("mod.jar", updated);
+            QUDLConfig.DownloadConfig config = new QUDLConfig.DownloadConfig();
+            QUDLDownloader downloader = new QUDLDownloader(QUDLHttp.newClient(config), config);
+            downloader.setDeltaSource(mods);
+            CountDownLatch finished = new CountDownLatch(1);
+            RecordingListener listener = new RecordingListener(hash, updated.length, layout, finished);
+
+            // 新文件写入暂存目录，旧版本仍在 mods 中
+            downloader.downloadFile(server.url("mod.jar"), "mod.jar", staging, listener);
+            assertTrue(finished.await(30, TimeUnit.SECONDS));
+            downloader.shutdown();
+
+            assertEquals(1, listener.completions(), String.valueOf(listener.error()));
+            assertEquals(hash, HashUtils.calculateSHA256(staging.resolve("mod.jar")));
+            assertArrayEquals(original, Files.readAllBytes(mods.resolve("mod.jar")));
+            assertTrue(server.bytesSent() < updated.length / 4, "sent " + server.bytesSent());
+        }
+    }
+
+    @Test
+    void deltaSyncFallsBackWithoutLocalFile() throws IOException, InterruptedException {
+        byte[] data = new byte[256 * 1024];
+        new SplittableRandom(8).nextBytes(data);
+        Path reference = Files.write(dir.resolve("reference.bin"), data);
+        FastCDC.Layout layout = new FastCDC.Layout(FastCDC.Params.DEFAULT, FastCDC.chunk(reference, FastCDC.Params.DEFAULT));
+
+        try (StandInServer server = new StandInServer()) {
+            String hash = server.put("new.jar", data);
+            QUDLConfig.DownloadConfig config = new QUDLConfig.DownloadConfig();
+            QUDLDownloader downloader = new QUDLDownloader(QUDLHttp.newClient(config), config);
+            CountDownLatch finished = new CountDownLatch(1);
+            RecordingListener listener = new RecordingListener(hash, data.length, layout, finished);
+
+            downloader.downloadFile(server.url("new.jar"), "new.jar", dir, listener);
+            assertTrue(finished.await(30, TimeUnit.SECONDS));
+            downloader.shutdown();
+
+            assertEquals(1, listener.completions());
+            assertEquals(hash, HashUtils.calculateSHA256(dir.resolve("new.jar")));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.qudl.network;
+
+import com.qudl.config.QUDLConfig;
+import com.qudl.testing.RecordingListener;
+import com.qudl.testing.StandInServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommitRetryTest {
+    @TempDir
+    Path dir;
+
+    private static QUDLConfig.DownloadConfig config(int retries) {
+        QUDLConfig.DownloadConfig config = new QUDLConfig.DownloadConfig();
+        config.retries = retries;
+        config.adaptive_threads = false;
+        return config;
+    }
+
+    // 目标位置是非空目录，替换 .part 时失败
+    private Path blockTarget() throws IOException {
+        Path target = dir.resolve("mod.jar");
+        Files.createDirectories(target);
+        Files.write(target.resolve("lock"), new byte[1]);
+        return target;
+    }
+
+    private static void unblock(Path target) throws IOException {
+        Files.delete(target.resolve("lock"));
+        Files.delete(target);
+    }
+
+    @Test
+    void failedCommitRetriesOnlyTheMove() throws Exception {
+        try (StandInServer server = new StandInServer()) {
+            byte[] data = new byte[64 * 1024];
+            new SplittableRandom(5).nextBytes(data);
+            String hash = server.put("mod.jar", data);
+            Path target = blockTarget();
+            QUDLDownloader downloader = new QUDLDownloader(QUDLHttp.newClient(config(1)), config(1));
+            CountDownLatch finished = new CountDownLatch(1);
+            RecordingListener listener = new RecordingListener(hash, data.length, null, finished);
+
+            downloader.downloadFile(server.url("mod.jar"), "mod.jar", dir, listener);
+            // 替换失败后保存进度，在重试等待期间移除阻挡
+            Path sidecar = dir.resolve("mod.jar.part.json");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (Files.notExists(sidecar) && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(Files.exists(sidecar), "替换没有失败");
+            long sent = server.bytesSent();
+            unblock(target);
+
+            assertTrue(finished.await(10, TimeUnit.SECONDS), "下载没有结束");
+            downloader.shutdown();
+
+            assertEquals(1, listener.completions(), String.valueOf(listener.error()));
+            assertEquals(data.length, sent);
+            assertEquals(sent, server.bytesSent());
+            assertArrayEquals(data, Files.readAllBytes(target));
+        }
+    }
+
+    @Test
+    void verifiedPartIsCommittedWithoutDownloadingNextSession() throws Exception {
+        try (StandInServer server = new StandInServer()) {
+            byte[] data = new byte[64 * 1024];
+            new SplittableRandom(7).nextBytes(data);
+            String hash = server.put("mod.jar", data);
+            Path target = blockTarget();
+
+            QUDLDownloader first = new QUDLDownloader(QUDLHttp.newClient(config(0)), config(0));
+            CountDownLatch failed = new CountDownLatch(1);
+            RecordingListener listener = new RecordingListener(hash, data.length, null, failed);
+            first.downloadFile(server.url("mod.jar"), "mod.jar", dir, listener);
+            assertTrue(failed.await(10, TimeUnit.SECONDS));
+            first.shutdown();
+            assertEquals(1, listener.errors());
+            unblock(target);
+
+            // 下次启动时完整的 .part 重新校验后直接替换
+            long sent = server.bytesSent();
+            QUDLDownloader second = new QUDLDownloader(QUDLHttp.newClient(config(0)), config(0));
+            CountDownLatch finished = new CountDownLatch(1);
+            listener = new RecordingListener(hash, data.length, null, finished);
+            second.downloadFile(server.url("mod.jar"), "mod.jar", dir, listener);
+            assertTrue(finished.await(10, TimeUnit.SECONDS));
+            second.shutdown();
+
+            assertEquals(1, listener.completions(), String.valueOf(listener.error()));
+            assertEquals(sent, server.bytesSent());
+            assertArrayEquals(data, Files.readAllBytes(target));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.qudl.network;
+
+import com.qudl.config.QUDLConfig;
+import com.qudl.testing.RecordingListener;
+import com.qudl.testing.StandInServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MirrorSetTest {
+    @TempDir
+    Path dir;
+
+    private static QUDLConfig.DownloadConfig config() {
+        QUDLConfig.DownloadConfig config = new QUDLConfig.DownloadConfig();
+        config.circuit_failures = 1;
+        config.circuit_backoff_ms = 60_000;
+        config.circuit_max_backoff_ms = 60_000;
+        return config;
+    }
+
+    @Test
+    void acquireFailsFastWhenAllCircuitsAreOpen() {
+        MirrorSet mirrors = new MirrorSet(List.of("http://a.example/", "http://b.example/"), config());
+        mirrors.mirrors().forEach(mirrors::recordFailure);
+
+        long start = System.nanoTime();
+        MirrorSet.CircuitOpenException e = assertThrows(MirrorSet.CircuitOpenException.class, () -> mirrors.acquire(0, null));
+        assertTrue(System.nanoTime() - start < 1_000_000_000L);
+        // 退避带抖动，在上限的一半到上限之间
+        assertTrue(e.retryAfter() > 25_000 && e.retryAfter() <= 60_000, "retryAfter " + e.retryAfter());
+    }
+
+    @Test
+    void acquireSkipsOpenCircuit() throws Exception {
+        MirrorSet mirrors = new MirrorSet(List.of("http://a.example/", "http://b.example/"), config());
+        MirrorSet.Mirror first = mirrors.mirrors().get(0);
+        MirrorSet.Mirror second = mirrors.mirrors().get(1);
+        mirrors.recordFailure(first);
+
+        assertSame(second, mirrors.acquire(0, null));
+        assertSame(second, mirrors.acquire(0, first));
+    }
+
+    @Test
+    void successClosesCircuit() throws Exception {
+        MirrorSet mirrors = new MirrorSet(List.of("http://a.example/", "http://b.example/"), config());
+        mirrors.mirrors().forEach(mirrors::recordFailure);
+        assertThrows(MirrorSet.CircuitOpenException.class, () -> mirrors.acquire(0, null));
+
+        MirrorSet.Mirror mirror = mirrors.primary();
+        mirrors.recordSuccess(mirror, 0, 1);
+        assertSame(mirror, mirrors.acquire(0, null));
+    }
+
+    @Test
+    void singleMirrorNeverOpens() throws Exception {
+        MirrorSet mirrors = new MirrorSet(List.of("http://a.example/"), config());
+        MirrorSet.Mirror mirror = mirrors.primary();
+        mirrors.recordFailure(mirror, new ConnectException("refused"));
+        mirrors.recordFailure(mirror, new QUDLDownloader.HttpStatusException(503));
+
+        assertSame(mirror, mirrors.acquire(0, null));
+    }
+
+    @Test
+    void onlyTransportErrorsAndServerErrorsCount() {
+        assertTrue(MirrorSet.isServerFailure(new ConnectException("refused")));
+        assertTrue(MirrorSet.isServerFailure(new QUDLDownloader.HttpStatusException(503)));
+        // 分段下载包装后的原因同样识别
+        assertTrue(MirrorSet.isServerFailure(new IOException(new QUDLDownloader.HttpStatusException(502))));
+        assertFalse(MirrorSet.isServerFailure(new QUDLDownloader.HttpStatusException(404)));
+        assertFalse(MirrorSet.isServerFailure(new QUDLDownloader.FileException("文件哈希校验失败: a.jar")));
+        assertFalse(MirrorSet.isServerFailure(new IOException(new QUDLDownloader.FileException("文件哈希校验失败: a.jar"))));
+        assertFalse(MirrorSet.isServerFailure(new MirrorSet.CircuitOpenException(1000)));
+    }
+
+    @Test
+    void missingFileDoesNotBlockOtherFiles() throws Exception {
+        QUDLConfig.DownloadConfig config = config();
+        config.adaptive_threads = false;
+        config.threads = 1;
+
+        try (StandInServer a = new StandInServer(); StandInServer b = new StandInServer()) {
+            QUDLDownloader downloader = new QUDLDownloader(QUDLHttp.newClient(config), config);
+            MirrorSet mirrors = new MirrorSet(List.of(a.baseUrl(), b.baseUrl()), config);
+            CountDownLatch finished = new CountDownLatch(4);
+            // 两个镜像上都没有，先下载且用尽重试
+            RecordingListener missing = new RecordingListener("0".repeat(64), 1, null, finished);
+            downloader.downloadFile(mirrors, "missing.jar", "missing.jar", dir, true, missing);
+            List<RecordingListener> listeners = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                byte[] data = ("mod" + i).getBytes(StandardCharsets.UTF_8);
+                a.put("mod" + i + ".jar", data);
+                String hash = b.put("mod" + i + ".jar", data);
+                RecordingListener listener = new RecordingListener(hash, data.length, null, finished);
+                listeners.add(listener);
+                downloader.downloadFile(mirrors, "mod" + i + ".jar", "mod" + i + ".jar", dir, false, listener);
+            }
+
+            assertTrue(finished.await(30, TimeUnit.SECONDS), "有文件没有结束");
+            downloader.shutdown();
+            assertEquals(1, missing.errors());
+            for (RecordingListener listener : listeners) {
+                assertEquals(1, listener.completions(), String.valueOf(listener.error()));
+            }
+            // 404 不计入熔断，两个镜像都仍可用
+            MirrorSet.Mirror first = mirrors.acquire(0, null);
+            assertFalse(first == mirrors.acquire(0, first));
+        }
+    }
+}
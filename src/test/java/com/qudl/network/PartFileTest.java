@@ -0,0 +1,151 @@
+package com.qudl.network;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartFileTest {
+    private static final byte[] CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.UTF_8);
+    private static final String HASH = DigestUtils.sha256Hex(CONTENT);
+
+    @TempDir
+    Path dir;
+    private Path target;
+
+    @BeforeEach
+    void setUp() {
+        target = dir.resolve("mod.jar");
+    }
+
+    // 写入已下载 offset 字节的 .part 和进度文件
+    private PartFile partial(int offset) throws IOException {
+        PartFile part = new PartFile(target);
+        part.load(HASH, CONTENT.length);
+        Files.write(part.data(), Arrays.copyOf(CONTENT, offset));
+        part.advance(offset);
+        part.state().etag = "\"v1\"";
+        part.save();
+        return part;
+    }
+
+    @Test
+    void resumesMatchingProgress() throws IOException {
+        partial(10);
+
+        PartFile part = new PartFile(target);
+        PartFile.State state = part.load(HASH.toUpperCase(), CONTENT.length);
+        assertEquals(10, state.offset);
+        assertEquals("\"v1\"", state.etag);
+        assertTrue(Files.exists(part.data()));
+    }
+
+    @Test
+    void resumedDigestCoversDownloadedPrefix() throws IOException {
+        partial(10);
+
+        PartFile part = new PartFile(target);
+        part.load(HASH, CONTENT.length);
+        part.digest().update(CONTENT, 10, CONTENT.length - 10);
+        assertEquals(HASH, Hex.encodeHexString(part.digest().digest()));
+    }
+
+    @Test
+    void discardsProgressForDifferentHash() throws IOException {
+        partial(10);
+
+        PartFile part = new PartFile(target);
+        PartFile.State state = part.load(DigestUtils.sha256Hex("other"), CONTENT.length);
+        assertEquals(0, state.offset);
+        assertNull(state.etag);
+        assertFalse(Files.exists(part.data()));
+    }
+
+    @Test
+    void discardsProgressForDifferentSize() throws IOException {
+        partial(10);
+
+        PartFile part = new PartFile(target);
+        assertEquals(0, part.load(HASH, CONTENT.length + 1).offset);
+        assertFalse(Files.exists(part.data()));
+    }
+
+    @Test
+    void discardsOffsetBeyondData() throws IOException {
+        PartFile saved = partial(10);
+        // 进度已保存但数据被截断
+        Files.write(saved.data(), new byte[4]);
+
+        PartFile part = new PartFile(target);
+        assertEquals(0, part.load(HASH, CONTENT.length).offset);
+        assertFalse(Files.exists(part.data()));
+    }
+
+    @Test
+    void discardsSegmentsWithNonZeroOffset() throws IOException {
+        PartFile saved = partial(10);
+        List<long[]> segments = new ArrayList<>();
+        segments.add(new long[]{10, CONTENT.length});
+        saved.state().segments = segments;
+        saved.save();
+
+        PartFile part = new PartFile(target);
+        PartFile.State state = part.load(HASH, CONTENT.length);
+        assertEquals(0, state.offset);
+        assertNull(state.segments);
+    }
+
+    @Test
+    void keepsSegmentsAtZeroOffset() throws IOException {
+        PartFile part = new PartFile(target);
+        part.load(HASH, CONTENT.length);
+        Files.write(part.data(), new byte[CONTENT.length]);
+        List<long[]> segments = new ArrayList<>();
+        segments.add(new long[]{4, 18});
+        segments.add(new long[]{22, CONTENT.length});
+        part.state().segments = segments;
+        part.save();
+
+        PartFile.State state = new PartFile(target).load(HASH, CONTENT.length);
+        assertEquals(2, state.segments.size());
+        assertEquals(22, state.segments.get(1)[0]);
+    }
+
+    @Test
+    void ignoresCorruptSidecarAndMissingData() throws IOException {
+        partial(10);
+        Files.writeString(target.resolveSibling("mod.jar.part.json"), "{not json");
+        assertEquals(0, new PartFile(target).load(HASH, CONTENT.length).offset);
+
+        PartFile saved = partial(10);
+        Files.delete(saved.data());
+        PartFile part = new PartFile(target);
+        assertEquals(0, part.load(HASH, CONTENT.length).offset);
+        assertFalse(Files.exists(target.resolveSibling("mod.jar.part.json")));
+    }
+
+    @Test
+    void commitReplacesTargetAndRemovesProgress() throws IOException {
+        Files.writeString(target, "old");
+        PartFile part = partial(CONTENT.length);
+
+        part.commit(target);
+        assertEquals(HASH, DigestUtils.sha256Hex(Files.readAllBytes(target)));
+        assertFalse(Files.exists(part.data()));
+        assertFalse(Files.exists(target.resolveSibling("mod.jar.part.json")));
+    }
+}
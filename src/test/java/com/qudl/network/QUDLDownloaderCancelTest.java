@@ -0,0 +1,104 @@
+package com.qudl.network;
+
+import com.qudl.config.QUDLConfig;
+import com.qudl.testing.FaultyServer;
+import com.qudl.testing.RecordingListener;
+import com.qudl.testing.StandInServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QUDLDownloaderCancelTest {
+    @TempDir
+    Path dir;
+
+    private static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new SplittableRandom(size).nextBytes(data);
+        return data;
+    }
+
+    // 取消后文件应在 2 秒内以取消结束
+    private static void assertCancelledPromptly(QUDLDownloader downloader, CountDownLatch finished,
+                                                RecordingListener listener) throws InterruptedException {
+        long start = System.nanoTime();
+        downloader.cancel();
+        assertTrue(finished.await(2, TimeUnit.SECONDS), "取消后下载没有结束");
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        downloader.shutdown();
+        assertEquals(0, listener.completions());
+        assertInstanceOf(CancellationException.class, listener.error());
+    }
+
+    @Test
+    void cancelWhileCircuitIsOpen() throws Exception {
+        QUDLConfig.DownloadConfig config = new QUDLConfig.DownloadConfig();
+        config.circuit_failures = 1;
+        config.circuit_backoff_ms = 60_000;
+        config.circuit_max_backoff_ms = 60_000;
+        config.adaptive_threads = false;
+
+        // 两个镜像的每个请求都返回 503，各自第一次失败后熔断一分钟
+        try (FaultyServer a = new FaultyServer(FaultyServer.Faults.parse("error=1"), "");
+             FaultyServer b = new FaultyServer(FaultyServer.Faults.parse("error=1"), "")) {
+            byte[] data = random(1024);
+            a.put("mod.jar", data);
+            String hash = b.put("mod.jar", data);
+            QUDLDownloader downloader = new QUDLDownloader(QUDLHttp.newClient(config), config);
+            MirrorSet mirrors = new MirrorSet(List.of(a.baseUrl(), b.baseUrl()), config);
+            CountDownLatch finished = new CountDownLatch(1);
+            RecordingListener listener = new RecordingListener(hash, data.length, null, finished);
+
+            downloader.downloadFile(mirrors, "mod.jar", "mod.jar", dir, false, listener);
+            // 等到熔断生效、下载线程进入等待
+            assertFalse(finished.await(1500, TimeUnit.MILLISECONDS));
+            assertThrowsCircuitOpen(mirrors);
+
+            assertCancelledPromptly(downloader, finished, listener);
+            assertFalse(Files.exists(dir.resolve("mod.jar")));
+        }
+    }
+
+    private static void assertThrowsCircuitOpen(MirrorSet mirrors) {
+        try {
+            mirrors.acquire(0, null);
+        } catch (MirrorSet.CircuitOpenException e) {
+            return;
+        }
+        throw new AssertionError("熔断没有生效");
+    }
+
+    @Test
+    void cancelWhileRateLimited() throws Exception {
+        QUDLConfig.DownloadConfig config = new QUDLConfig.DownloadConfig();
+        config.bandwidth_limit_kbps = 16;
+        config.adaptive_threads = false;
+
+        try (StandInServer server = new StandInServer()) {
+            byte[] data = random(1024 * 1024);
+            String hash = server.put("mod.jar", data);
+            QUDLDownloader downloader = new QUDLDownloader(QUDLHttp.newClient(config), config);
+            CountDownLatch finished = new CountDownLatch(1);
+            RecordingListener listener = new RecordingListener(hash, data.length, null, finished);
+
+            downloader.downloadFile(server.url("mod.jar"), "mod.jar", dir, listener);
+            assertFalse(finished.await(1000, TimeUnit.MILLISECONDS));
+
+            assertCancelledPromptly(downloader, finished, listener);
+            // 已下载部分保留用于续传
+            assertTrue(Files.exists(dir.resolve("mod.jar.part")));
+        }
+    }
+}
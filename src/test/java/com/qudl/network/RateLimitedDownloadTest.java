@@ -0,0 +1,48 @@
+package com.qudl.network;
+
+import com.qudl.config.QUDLConfig;
+import com.qudl.testing.RecordingListener;
+import com.qudl.testing.StandInServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitedDownloadTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void tokenWaitLongerThanReadTimeoutIsNotIdle() throws Exception {
+        QUDLConfig.DownloadConfig config = new QUDLConfig.DownloadConfig();
+        // 每次读取 16 KB，4 KB/s 时两次读取之间等待约 4 秒，远超读取超时
+        config.bandwidth_limit_kbps = 4;
+        config.read_timeout_ms = 1000;
+        config.retries = 0;
+        config.adaptive_threads = false;
+
+        try (StandInServer server = new StandInServer()) {
+            byte[] data = new byte[20 * 1024];
+            new SplittableRandom(3).nextBytes(data);
+            String hash = server.put("mod.jar", data);
+            QUDLDownloader downloader = new QUDLDownloader(QUDLHttp.newClient(config), config);
+            CountDownLatch finished = new CountDownLatch(1);
+            RecordingListener listener = new RecordingListener(hash, data.length, null, finished);
+
+            downloader.downloadFile(server.url("mod.jar"), "mod.jar", dir, listener);
+            assertTrue(finished.await(30, TimeUnit.SECONDS), "限速下载没有结束");
+            downloader.shutdown();
+
+            assertEquals(1, listener.completions(), String.valueOf(listener.error()));
+            assertArrayEquals(data, Files.readAllBytes(dir.resolve("mod.jar")));
+        }
+    }
+}
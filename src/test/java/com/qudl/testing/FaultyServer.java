@@ -0,0 +1,162 @@
+package com.qudl.testing;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 注入故障的替身服务器：模拟玩家遇到的慢速、截断、出错和不支持续传的响应
+// 只对以 prefix 开头的路径注入，manifest 等放在其他路径下保持可靠
+public class FaultyServer extends StandInServer {
+    private static final int WRITE_CHUNK = 16 * 1024;
+
+    public static class Faults {
+        // 每个响应开始前的延迟
+        public int latency_ms;
+        // 单个响应的速度上限（KB/s），0 表示不限
+        public int bandwidth_kbps;
+        // 以下为每个响应发生的概率
+        // 传输到一半时断开连接
+        public double disconnect;
+        // 篡改一个字节，哈希校验失败
+        public double corrupt;
+        // 返回 503
+        public double error;
+        // 忽略 Range 头，返回完整内容
+        public double ignore_range;
+
+        // 格式：latency_ms=50,bandwidth_kbps=512,disconnect=0.05,corrupt=0.02,error=0.05,ignore_range=0.1
+        public static Faults parse(String spec) {
+            Faults faults = new Faults();
+            if (spec == null || spec.isBlank() || spec.equals("none")) {
+                return faults;
+            }
+            for (String part : spec.split(",")) {
+                String[] pair = part.split("=", 2);
+                if (pair.length != 2) {
+                    throw new IllegalArgumentException("无效的故障配置: " + part);
+                }
+                String value = pair[1].trim();
+                switch (pair[0].trim()) {
+                    case "latency_ms" -> faults.latency_ms = Integer.parseInt(value);
+                    case "bandwidth_kbps" -> faults.bandwidth_kbps = Integer.parseInt(value);
+                    case "disconnect" -> faults.disconnect = Double.parseDouble(value);
+                    case "corrupt" -> faults.corrupt = Double.parseDouble(value);
+                    case "error" -> faults.error = Double.parseDouble(value);
+                    case "ignore_range" -> faults.ignore_range = Double.parseDouble(value);
+                    default -> throw new IllegalArgumentException("未知的故障类型: " + pair[0]);
+                }
+            }
+            return faults;
+        }
+    }
+
+    private final Faults faults;
+    private final String prefix;
+    private final Map<String, AtomicLong> injected = new ConcurrentHashMap<>();
+
+    public FaultyServer(Faults faults, String prefix) throws IOException {
+        this.faults = faults;
+        this.prefix = "/" + prefix;
+    }
+
+    // 各类故障实际注入的次数
+    public Map<String, Long> injected() {
+        Map<String, Long> counts = new TreeMap<>();
+        injected.forEach((name, count) -> counts.put(name, count.get()));
+        return counts;
+    }
+
+    @Override
+    protected void handle(HttpExchange exchange) throws IOException {
+        if (!affected(exchange)) {
+            super.handle(exchange);
+            return;
+        }
+        if (faults.latency_ms > 0) {
+            try {
+                Thread.sleep(faults.latency_ms);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                exchange.close();
+                return;
+            }
+        }
+        if (roll("error", faults.error)) {
+            try (exchange) {
+                exchange.sendResponseHeaders(503, -1);
+            }
+            return;
+        }
+        super.handle(exchange);
+    }
+
+    @Override
+    protected boolean acceptRange(HttpExchange exchange) {
+        return !affected(exchange) || !roll("ignore_range", faults.ignore_range);
+    }
+
+    @Override
+    protected void write(HttpExchange exchange, OutputStream out, byte[] data, int offset, int length) throws IOException {
+        if (!affected(exchange)) {
+            super.write(exchange, out, data, offset, length);
+            return;
+        }
+        if (length > 0 && roll("corrupt", faults.corrupt)) {
+            byte[] copy = new byte[length];
+            System.arraycopy(data, offset, copy, 0, length);
+            copy[ThreadLocalRandom.current().nextInt(length)] ^= 0x5A;
+            data = copy;
+            offset = 0;
+        }
+        // 断开位置在内容的 10%~90% 之间
+        int limit = length;
+        boolean disconnect = length > 1 && roll("disconnect", faults.disconnect);
+        if (disconnect) {
+            limit = (int) (length * ThreadLocalRandom.current().nextDouble(0.1, 0.9));
+        }
+
+        long bytesPerSecond = faults.bandwidth_kbps * 1024L;
+        long start = System.nanoTime();
+        int written = 0;
+        while (written < limit) {
+            int count = Math.min(WRITE_CHUNK, limit - written);
+            super.write(exchange, out, data, offset + written, count);
+            written += count;
+            if (bytesPerSecond > 0) {
+                long due = start + written * 1_000_000_000L / bytesPerSecond;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    try {
+                        Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("服务器已关闭");
+                    }
+                }
+            }
+        }
+        if (disconnect) {
+            out.flush();
+            // 未写满声明的长度就关闭，客户端读到提前结束的响应
+            throw new IOException("注入的连接中断");
+        }
+    }
+
+    private boolean affected(HttpExchange exchange) {
+        return exchange.getRequestURI().getPath().startsWith(prefix);
+    }
+
+    private boolean roll(String name, double probability) {
+        if (probability <= 0 || ThreadLocalRandom.current().nextDouble() >= probability) {
+            return false;
+        }
+        injected.computeIfAbsent(name, key -> new AtomicLong()).incrementAndGet();
+        return true;
+    }
+}
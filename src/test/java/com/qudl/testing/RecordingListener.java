@@ -0,0 +1,73 @@
+package com.qudl.testing;
+
+import com.qudl.network.QUDLDownloader;
+import com.qudl.util.FastCDC;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 单个文件的下载监听：记录结束方式，每个文件结束时对 finished 计数一次
+public class RecordingListener implements QUDLDownloader.ProgressListener {
+    private final String hash;
+    private final long size;
+    private final FastCDC.Layout layout;
+    private final CountDownLatch finished;
+    private final AtomicInteger completions = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private volatile Exception error;
+
+    public RecordingListener(String hash, long size, FastCDC.Layout layout, CountDownLatch finished) {
+        this.hash = hash;
+        this.size = size;
+        this.layout = layout;
+        this.finished = finished;
+    }
+
+    public int completions() {
+        return completions.get();
+    }
+
+    public int errors() {
+        return errors.get();
+    }
+
+    public Exception error() {
+        return error;
+    }
+
+    @Override
+    public void onStartDownload(String filename) {
+    }
+
+    @Override
+    public void onProgress(String filename, long current, long total) {
+    }
+
+    @Override
+    public void onComplete(String filename) {
+        completions.incrementAndGet();
+        finished.countDown();
+    }
+
+    @Override
+    public void onError(String filename, Exception e) {
+        error = e;
+        errors.incrementAndGet();
+        finished.countDown();
+    }
+
+    @Override
+    public String getExpectedHash(String filename) {
+        return hash;
+    }
+
+    @Override
+    public long getExpectedSize(String filename) {
+        return size;
+    }
+
+    @Override
+    public FastCDC.Layout getChunkLayout(String filename) {
+        return layout;
+    }
+}
@@ -0,0 +1,173 @@
+package com.qudl.testing;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// 进程内的更新服务器替身：从内存提供文件，支持 Range、ETag 和小文件打包接口
+public class StandInServer implements AutoCloseable {
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+    private static final Gson GSON = new Gson();
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "StandIn-Http");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private final Map<String, String> etags = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+    private volatile boolean bundles = true;
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    public StandInServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    public String url(String name) {
+        return baseUrl() + name;
+    }
+
+    // 添加文件并返回其 SHA-256
+    public String put(String name, byte[] data) {
+        files.put(name, data);
+        String hash = DigestUtils.sha256Hex(data);
+        etags.put(name, "\"" + hash.substring(0, 16) + "\"");
+        blobs.put(hash, data);
+        return hash;
+    }
+
+    // 关闭后打包请求返回 404，模拟旧版服务器
+    public void setBundles(boolean enabled) {
+        bundles = enabled;
+    }
+
+    // 已发送的响应内容字节数，包括中途断开的部分
+    public long bytesSent() {
+        return bytesSent.get();
+    }
+
+    protected void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if ("POST".equals(exchange.getRequestMethod()) && exchange.getRequestURI().getPath().endsWith("/bundle")) {
+                bundle(exchange);
+                return;
+            }
+            String name = exchange.getRequestURI().getPath().substring(1);
+            byte[] data = files.get(name);
+            if (data == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            serve(exchange, data, etags.get(name));
+        }
+    }
+
+    protected void serve(HttpExchange exchange, byte[] data, String etag) throws IOException {
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+
+        long start = 0;
+        long end = data.length - 1;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        if (range != null && (ifRange == null || ifRange.equals(etag)) && acceptRange(exchange)) {
+            Matcher matcher = RANGE.matcher(range);
+            if (matcher.matches()) {
+                start = Long.parseLong(matcher.group(1));
+                if (!matcher.group(2).isEmpty()) {
+                    end = Math.min(end, Long.parseLong(matcher.group(2)));
+                }
+                if (start > end) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes */" + data.length);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + data.length);
+            }
+        }
+
+        long length = end - start + 1;
+        exchange.sendResponseHeaders(status, length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            write(exchange, out, data, (int) start, (int) length);
+        }
+    }
+
+    // 返回 false 时忽略 Range 头，返回完整内容
+    protected boolean acceptRange(HttpExchange exchange) {
+        return true;
+    }
+
+    protected void write(HttpExchange exchange, OutputStream out, byte[] data, int offset, int length) throws IOException {
+        out.write(data, offset, length);
+        bytesSent.addAndGet(length);
+    }
+
+    // 请求体 {"hashes": [...]}，返回以哈希命名条目的 zip；jar 已压缩，条目使用 STORED
+    protected void bundle(HttpExchange exchange) throws IOException {
+        if (!bundles) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        JsonObject request = GSON.fromJson(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8), JsonObject.class);
+        exchange.getResponseHeaders().set("Content-Type", "application/zip");
+        exchange.sendResponseHeaders(200, 0);
+        try (ZipOutputStream zip = new ZipOutputStream(exchange.getResponseBody())) {
+            for (JsonElement element : request.getAsJsonArray("hashes")) {
+                String hash = element.getAsString().toLowerCase(Locale.ROOT);
+                byte[] data = blobs.get(hash);
+                if (data == null) {
+                    continue;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                ZipEntry entry = new ZipEntry(hash);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(data.length);
+                entry.setCrc(crc.getValue());
+                zip.putNextEntry(entry);
+                zip.write(data);
+                zip.closeEntry();
+                bytesSent.addAndGet(data.length);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
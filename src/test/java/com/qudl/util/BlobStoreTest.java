@@ -0,0 +1,71 @@
+package com.qudl.util;
+
+import com.qudl.config.QUDLConfig;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlobStoreTest {
+    @TempDir
+    Path dir;
+    private BlobStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = open();
+    }
+
+    private BlobStore open() {
+        QUDLConfig.StoreConfig config = new QUDLConfig.StoreConfig();
+        config.path = dir.resolve("store").toString();
+        return BlobStore.open(config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    private Path adopt(String content) throws IOException {
+        Path file = Files.writeString(dir.resolve("source.jar"), content);
+        store.adopt(DigestUtils.sha256Hex(content), file);
+        return file;
+    }
+
+    @Test
+    void installLinksVerifiedBlob() throws IOException {
+        adopt("mod");
+        Path target = dir.resolve("mods-a.jar");
+
+        assertTrue(store.install(DigestUtils.sha256Hex("mod"), 3, target));
+        assertEquals("mod", Files.readString(target));
+    }
+
+    @Test
+    void installRejectsCorruptedBlobOfSameSize() throws IOException {
+        String hash = DigestUtils.sha256Hex("mod");
+        adopt("mod");
+        // 替换而不是原地写入，硬链接的来源文件不受影响
+        Path corrupt = Files.writeString(dir.resolve("corrupt"), "mud", StandardCharsets.UTF_8);
+        Files.move(corrupt, store.blob(hash), StandardCopyOption.REPLACE_EXISTING);
+        // 新的会话中首次安装时核对内容
+        store.close();
+        store = open();
+
+        assertFalse(store.install(hash, 3, dir.resolve("mods-a.jar")));
+        assertFalse(Files.exists(dir.resolve("mods-a.jar")));
+        assertFalse(store.contains(hash));
+    }
+}
@@ -0,0 +1,80 @@
+package com.qudl.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FastCDCTest {
+    private static final FastCDC.Params PARAMS = FastCDC.Params.DEFAULT;
+
+    @TempDir
+    Path dir;
+
+    private Path write(String name, byte[] data) throws IOException {
+        return Files.write(dir.resolve(name), data);
+    }
+
+    private static byte[] random(int size, long seed) {
+        byte[] data = new byte[size];
+        new SplittableRandom(seed).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    void chunksCoverFileWithinBounds() throws IOException {
+        byte[] data = random(3 * 1024 * 1024 + 123, 1);
+        List<FastCDC.Chunk> chunks = FastCDC.chunk(write("a.jar", data), PARAMS);
+
+        long offset = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            FastCDC.Chunk chunk = chunks.get(i);
+            assertEquals(offset, chunk.offset());
+            assertTrue(chunk.length() <= PARAMS.max());
+            // 只有最后一块可以小于最小值
+            assertTrue(i == chunks.size() - 1 || chunk.length() >= PARAMS.min());
+            offset += chunk.length();
+        }
+        assertEquals(data.length, offset);
+    }
+
+    @Test
+    void insertionOnlyChangesNearbyChunks() throws IOException {
+        byte[] original = random(4 * 1024 * 1024, 2);
+        byte[] edited = new byte[original.length + 100];
+        int at = original.length / 3;
+        System.arraycopy(original, 0, edited, 0, at);
+        System.arraycopy(random(100, 3), 0, edited, at, 100);
+        System.arraycopy(original, at, edited, at + 100, original.length - at);
+
+        List<FastCDC.Chunk> before = FastCDC.chunk(write("old.jar", original), PARAMS);
+        List<FastCDC.Chunk> after = FastCDC.chunk(write("new.jar", edited), PARAMS);
+        Set<String> known = new HashSet<>();
+        before.forEach(chunk -> known.add(chunk.hash()));
+        long changed = 0;
+        for (FastCDC.Chunk chunk : after) {
+            if (!known.contains(chunk.hash())) {
+                changed += chunk.length();
+            }
+        }
+        // 插入点之后的边界重新对齐，变化的内容不超过几个块
+        assertTrue(changed <= 3L * PARAMS.max(), "changed " + changed);
+    }
+
+    @Test
+    void smallFileIsSingleChunk() throws IOException {
+        byte[] data = random(1000, 4);
+        List<FastCDC.Chunk> chunks = FastCDC.chunk(write("small.jar", data), PARAMS);
+        assertEquals(1, chunks.size());
+        assertEquals(HashUtils.calculateSHA256(dir.resolve("small.jar")), chunks.get(0).hash());
+    }
+}
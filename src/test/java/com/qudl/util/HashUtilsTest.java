@@ -0,0 +1,58 @@
+package com.qudl.util;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HashUtilsTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void batchReportsEveryFileOnCallingThread() throws Exception {
+        Map<Path, String> expected = new ConcurrentHashMap<>();
+        List<Path> files = new ArrayList<>();
+        SplittableRandom random = new SplittableRandom(4);
+        // 大小跨越映射阈值，两种读取方式都被覆盖
+        for (int size : new int[]{0, 1000, 5 * 1024 * 1024 + 3}) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            Path file = Files.write(dir.resolve(size + ".jar"), data);
+            files.add(file);
+            expected.put(file, DigestUtils.sha256Hex(data));
+        }
+        Path missing = dir.resolve("missing.jar");
+        files.add(missing);
+
+        Thread caller = Thread.currentThread();
+        Map<Path, String> hashed = new ConcurrentHashMap<>();
+        List<Path> failed = new ArrayList<>();
+        HashUtils.calculateSHA256All(files, new HashUtils.HashListener() {
+            @Override
+            public void onHashed(Path file, String hash) {
+                assertEquals(caller, Thread.currentThread());
+                hashed.put(file, hash);
+            }
+
+            @Override
+            public void onError(Path file, IOException e) {
+                assertEquals(caller, Thread.currentThread());
+                failed.add(file);
+            }
+        });
+
+        assertEquals(expected, hashed);
+        assertEquals(List.of(missing), failed);
+    }
+}
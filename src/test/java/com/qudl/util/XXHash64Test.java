@@ -0,0 +1,64 @@
+package com.qudl.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class XXHash64Test {
+    @TempDir
+    Path dir;
+
+    private static String hash(String text) {
+        XXHash64 digest = new XXHash64();
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        digest.update(data, 0, data.length);
+        return digest.digestHex();
+    }
+
+    // 参考实现（种子 0）的已知结果
+    @Test
+    void matchesReferenceVectors() {
+        assertEquals("ef46db3751d8e999", hash(""));
+        assertEquals("d24ec4f1a98c6e5b", hash("a"));
+        assertEquals("44bc2cf5ad770999", hash("abc"));
+        assertEquals("fbcea83c8a378bf1", hash("Nobody inspects the spammish repetition"));
+    }
+
+    @Test
+    void streamingMatchesSingleUpdate() {
+        byte[] data = new byte[1000];
+        new SplittableRandom(1).nextBytes(data);
+        XXHash64 whole = new XXHash64();
+        whole.update(data, 0, data.length);
+
+        // 分片大小跨越 32 字节条带边界
+        for (int step : new int[]{1, 7, 31, 32, 33, 100}) {
+            XXHash64 pieces = new XXHash64();
+            for (int offset = 0; offset < data.length; offset += step) {
+                pieces.update(ByteBuffer.wrap(data, offset, Math.min(step, data.length - offset)));
+            }
+            assertEquals(whole.digest(), pieces.digest(), "step " + step);
+        }
+    }
+
+    @Test
+    void fileHashMatchesInMemoryHash() throws IOException {
+        // 超过映射阈值，覆盖分区映射读取
+        byte[] data = new byte[5 * 1024 * 1024 + 17];
+        new SplittableRandom(2).nextBytes(data);
+        XXHash64 digest = new XXHash64();
+        digest.update(data, 0, data.length);
+
+        Path file = Files.write(dir.resolve("big.jar"), data);
+        assertEquals(digest.digestHex(), HashUtils.calculateXXH64(file));
+        assertEquals(digest.digestHex(), HashUtils.calculate(file, "XXH64"));
+    }
+}